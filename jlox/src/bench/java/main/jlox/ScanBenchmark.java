@@ -0,0 +1,65 @@
+package main.jlox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures scanning throughput of a script with {@link ParallelScanner} on
+ * pools of 1, 2, 4... workers up to the number of cores, against one
+ * {@link Scanner}, and checks every run produced the sequential tokens.
+ *
+ * It lives in its own source root, so it stays out of the interpreter's
+ * classes and jar. It shares their package to reach the scanners; compile
+ * it against them and run it from the jlox directory:
+ *
+ *   javac -d target/bench-classes -cp target/classes src/bench/java/main/jlox/ScanBenchmark.java
+ *   java -cp target/classes:target/bench-classes main.jlox.ScanBenchmark script [rounds]
+ */
+public class ScanBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: ScanBenchmark script [rounds]");
+            System.exit(64);
+        }
+
+        String source = new String(Files.readAllBytes(Paths.get(args[0])), Charset.defaultCharset());
+        int rounds = args.length == 2 ? Integer.parseInt(args[1]) : 10;
+        double megabytes = source.length() / 1e6;
+
+        TokenBuffer expected = new Scanner(source).scanTokenBuffer();
+        System.out.printf("%.1f MB, %d tokens%n", megabytes, expected.size());
+
+        long sequential = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; ++round) {
+            long start = System.nanoTime();
+            new Scanner(source).scanTokenBuffer();
+            sequential = Math.min(sequential, System.nanoTime() - start);
+        }
+        System.out.printf("sequential  %8.1f MB/s%n", megabytes / (sequential / 1e9));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers = workers < cores ? Math.min(workers * 2, cores) : cores + 1) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            ParallelScanner scanner = new ParallelScanner(pool);
+
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; ++round) {
+                long start = System.nanoTime();
+                TokenBuffer tokens = scanner.scan(source);
+                best = Math.min(best, System.nanoTime() - start);
+
+                if (!tokens.sameTokens(expected)) {
+                    System.out.println("parallel scan with " + workers + " workers differs from sequential scan");
+                    System.exit(70);
+                }
+            }
+            pool.shutdown();
+
+            System.out.printf("%2d workers  %8.1f MB/s  %.2fx%n", workers, megabytes / (best / 1e9),
+                    (double) sequential / best);
+        }
+    }
+}
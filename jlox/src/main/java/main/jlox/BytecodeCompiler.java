@@ -0,0 +1,760 @@
+package main.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a resolved syntax tree into bytecode for the {@link VM}. Local and
+ * upvalue resolution follows clox's compiler: locals live in stack slots of
+ * the call frame and variables captured by closures are reached through
+ * upvalues.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int UINT8_COUNT = 256;
+    private static final int UINT16_MAX = 65535;
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class FunctionCompiler {
+        final FunctionCompiler enclosing;
+        final ObjFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        int stackDepth = 0;
+
+        FunctionCompiler(FunctionCompiler enclosing, ObjFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+
+            // slot zero holds the callee, or the receiver for methods
+            boolean isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            locals.add(new Local(isMethod ? "this" : "", 0));
+            stackDepth = 1;
+            function.maxStack = 1;
+        }
+    }
+
+    private static class ClassCompiler {
+        final ClassCompiler enclosing;
+        boolean hasSuperclass = false;
+
+        ClassCompiler(ClassCompiler enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private FunctionCompiler current = null;
+    private ClassCompiler currentClass = null;
+    private int line = 1;
+
+    ObjFunction compile(List<Stmt> statements) {
+        current = new FunctionCompiler(null, new ObjFunction(null), FunctionType.NONE);
+
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+
+        return endCompiler();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        namedVariable(expr.name.lexeme, true);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case GREATER:
+                emitOp(OpCode.OP_GREATER);
+                break;
+            case GREATER_EQUAL:
+                emitOp(OpCode.OP_GREATER_EQUAL);
+                break;
+            case LESS:
+                emitOp(OpCode.OP_LESS);
+                break;
+            case LESS_EQUAL:
+                emitOp(OpCode.OP_LESS_EQUAL);
+                break;
+            case BANG_EQUAL:
+                emitOp(OpCode.OP_EQUAL);
+                emitOp(OpCode.OP_NOT);
+                break;
+            case EQUAL_EQUAL:
+                emitOp(OpCode.OP_EQUAL);
+                break;
+            case MINUS:
+                emitOp(OpCode.OP_SUBTRACT);
+                break;
+            case PLUS:
+                emitOp(OpCode.OP_ADD);
+                break;
+            case SLASH:
+                emitOp(OpCode.OP_DIVIDE);
+                break;
+            case STAR:
+                emitOp(OpCode.OP_MULTIPLY);
+                break;
+
+            default:
+                break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            // obj.method(args) skips the bound method allocation
+            Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            int argCount = argumentList(expr.arguments);
+
+            line = expr.paren.line;
+            emitOp(OpCode.OP_INVOKE);
+            emitShort(identifierConstant(get.name.lexeme));
+            emitByte(argCount);
+            adjustStack(-argCount);
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            line = superExpr.keyword.line;
+            namedVariable("this", false);
+            int argCount = argumentList(expr.arguments);
+            namedVariable("super", false);
+
+            line = expr.paren.line;
+            emitOp(OpCode.OP_SUPER_INVOKE);
+            emitShort(identifierConstant(superExpr.method.lexeme));
+            emitByte(argCount);
+            adjustStack(-argCount - 1);
+            return null;
+        }
+
+        compile(expr.callee);
+        int argCount = argumentList(expr.arguments);
+
+        line = expr.paren.line;
+        emitOp(OpCode.OP_CALL);
+        emitByte(argCount);
+        adjustStack(-argCount);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+
+        line = expr.name.line;
+        emitOp(OpCode.OP_GET_PROPERTY);
+        emitShort(identifierConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitOp(OpCode.OP_NIL);
+        } else if (Boolean.TRUE.equals(expr.value)) {
+            emitOp(OpCode.OP_TRUE);
+        } else if (Boolean.FALSE.equals(expr.value)) {
+            emitOp(OpCode.OP_FALSE);
+        } else {
+            emitOp(OpCode.OP_CONSTANT);
+            emitShort(makeConstant(expr.value));
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.OP_JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.OP_JUMP);
+
+            patchJump(elseJump);
+            emitOp(OpCode.OP_POP);
+
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.OP_JUMP_IF_FALSE);
+
+            emitOp(OpCode.OP_POP);
+            compile(expr.right);
+
+            patchJump(endJump);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+
+        line = expr.name.line;
+        emitOp(OpCode.OP_SET_PROPERTY);
+        emitShort(identifierConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        namedVariable("this", false);
+        namedVariable("super", false);
+
+        line = expr.method.line;
+        emitOp(OpCode.OP_GET_SUPER);
+        emitShort(identifierConstant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        line = expr.keyword.line;
+        namedVariable("this", false);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG:
+                emitOp(OpCode.OP_NOT);
+                break;
+            case MINUS:
+                emitOp(OpCode.OP_NEGATE);
+                break;
+
+            default:
+                break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        namedVariable(expr.name.lexeme, false);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        String className = stmt.name.lexeme;
+        int nameConstant = identifierConstant(className);
+        declareVariable(className);
+
+        emitOp(OpCode.OP_CLASS);
+        emitShort(nameConstant);
+        defineVariable(nameConstant);
+
+        ClassCompiler classCompiler = new ClassCompiler(currentClass);
+        currentClass = classCompiler;
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+
+            beginScope();
+            addLocal("super");
+
+            namedVariable(className, false);
+            line = stmt.superclass.name.line;
+            emitOp(OpCode.OP_INHERIT);
+            classCompiler.hasSuperclass = true;
+        }
+
+        namedVariable(className, false);
+        for (Stmt.Function method : stmt.methods) {
+            line = method.name.line;
+            int constant = identifierConstant(method.name.lexeme);
+
+            FunctionType type = FunctionType.METHOD;
+            if (method.name.lexeme.equals("init")) {
+                type = FunctionType.INITIALIZER;
+            }
+
+            function(method, type);
+            emitOp(OpCode.OP_METHOD);
+            emitShort(constant);
+        }
+        emitOp(OpCode.OP_POP);
+
+        if (classCompiler.hasSuperclass) {
+            endScope();
+        }
+
+        currentClass = currentClass.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.OP_POP);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        beginScope();
+        if (stmt.initializer != null)
+            compile(stmt.initializer);
+
+        int loopStart = currentChunk().count;
+        compile(stmt.condition);
+
+        int exitJump = emitJump(OpCode.OP_JUMP_IF_FALSE);
+        emitOp(OpCode.OP_POP);
+        compile(stmt.body);
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emitOp(OpCode.OP_POP);
+        }
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(OpCode.OP_POP);
+        endScope();
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        int global = current.scopeDepth > 0 ? -1 : identifierConstant(stmt.name.lexeme);
+
+        // declared before the body so the function can refer to itself
+        declareVariable(stmt.name.lexeme);
+        function(stmt, FunctionType.FUNCTION);
+        defineVariable(global);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+
+        int thenJump = emitJump(OpCode.OP_JUMP_IF_FALSE);
+        emitOp(OpCode.OP_POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.OP_JUMP);
+
+        // the else path starts with the condition still on the stack
+        patchJump(thenJump);
+        adjustStack(1);
+        emitOp(OpCode.OP_POP);
+
+        if (stmt.elseBranch != null)
+            compile(stmt.elseBranch);
+        patchJump(elseJump);
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.OP_PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emitOp(OpCode.OP_RETURN);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emitOp(OpCode.OP_NIL);
+        }
+
+        line = stmt.name.line;
+        if (current.scopeDepth > 0) {
+            // the initializer's value already sits in the new local's slot
+            addLocal(stmt.name.lexeme);
+        } else {
+            defineVariable(identifierConstant(stmt.name.lexeme));
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = currentChunk().count;
+        compile(stmt.condition);
+
+        int exitJump = emitJump(OpCode.OP_JUMP_IF_FALSE);
+        emitOp(OpCode.OP_POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(OpCode.OP_POP);
+
+        return null;
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        current = new FunctionCompiler(current, new ObjFunction(stmt.name.lexeme), type);
+        FunctionCompiler compiler = current;
+        beginScope();
+
+        // the caller pushes the arguments, so parameters start out on the stack
+        for (Token param : stmt.params) {
+            current.function.arity++;
+            addLocal(param.lexeme);
+            adjustStack(1);
+        }
+
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+
+        ObjFunction function = endCompiler();
+
+        line = stmt.name.line;
+        emitOp(OpCode.OP_CLOSURE);
+        emitShort(makeConstant(function));
+
+        for (Upvalue upvalue : compiler.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte(upvalue.index);
+        }
+    }
+
+    private ObjFunction endCompiler() {
+        emitReturn();
+
+        ObjFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+
+        current = current.enclosing;
+        return function;
+    }
+
+    private int argumentList(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+
+        return arguments.size();
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            if (locals.get(locals.size() - 1).isCaptured) {
+                emitOp(OpCode.OP_CLOSE_UPVALUE);
+            } else {
+                emitOp(OpCode.OP_POP);
+            }
+
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void namedVariable(String name, boolean assign) {
+        byte getOp, setOp;
+        int arg = resolveLocal(current, name);
+
+        if (arg != -1) {
+            getOp = OpCode.OP_GET_LOCAL;
+            setOp = OpCode.OP_SET_LOCAL;
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            getOp = OpCode.OP_GET_UPVALUE;
+            setOp = OpCode.OP_SET_UPVALUE;
+        } else {
+            int constant = identifierConstant(name);
+            emitOp(assign ? OpCode.OP_SET_GLOBAL : OpCode.OP_GET_GLOBAL);
+            emitShort(constant);
+            return;
+        }
+
+        emitOp(assign ? setOp : getOp);
+        emitByte(arg);
+    }
+
+    private int resolveLocal(FunctionCompiler compiler, String name) {
+        for (int i = compiler.locals.size() - 1; i >= 0; --i) {
+            if (compiler.locals.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionCompiler compiler, String name) {
+        if (compiler.enclosing == null)
+            return -1;
+
+        int local = resolveLocal(compiler.enclosing, name);
+        if (local != -1) {
+            compiler.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(compiler, local, true);
+        }
+
+        int upvalue = resolveUpvalue(compiler.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(compiler, upvalue, false);
+        }
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionCompiler compiler, int index, boolean isLocal) {
+        for (int i = 0; i < compiler.upvalues.size(); ++i) {
+            Upvalue upvalue = compiler.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+
+        if (compiler.upvalues.size() == UINT8_COUNT) {
+            Lox.error(line, "Too many closure variables in function.");
+            return 0;
+        }
+
+        compiler.upvalues.add(new Upvalue(index, isLocal));
+        return compiler.upvalues.size() - 1;
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() == UINT8_COUNT) {
+            Lox.error(line, "Too many local variables in function.");
+            return;
+        }
+
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private void declareVariable(String name) {
+        if (current.scopeDepth == 0)
+            return;
+
+        addLocal(name);
+    }
+
+    private void defineVariable(int global) {
+        if (current.scopeDepth > 0)
+            return;
+
+        emitOp(OpCode.OP_DEFINE_GLOBAL);
+        emitShort(global);
+    }
+
+    private Chunk currentChunk() {
+        return current.function.chunk;
+    }
+
+    private int identifierConstant(String name) {
+        return makeConstant(name);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = currentChunk().addConstant(value);
+        if (constant > UINT16_MAX) {
+            Lox.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        return constant;
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            // return the bound 'this' argument -- the new instance
+            emitOp(OpCode.OP_GET_LOCAL);
+            emitByte(0);
+        } else {
+            emitOp(OpCode.OP_NIL);
+        }
+
+        emitOp(OpCode.OP_RETURN);
+    }
+
+    private int emitJump(byte instruction) {
+        emitOp(instruction);
+        emitByte(0xff);
+        emitByte(0xff);
+        return currentChunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = currentChunk().count - offset - 2;
+
+        if (jump > UINT16_MAX) {
+            Lox.error(line, "Too much code to jump over.");
+        }
+
+        currentChunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        currentChunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitOp(OpCode.OP_LOOP);
+
+        int offset = currentChunk().count - loopStart + 2;
+        if (offset > UINT16_MAX) {
+            Lox.error(line, "Loop body too large.");
+        }
+
+        emitShort(offset);
+    }
+
+    private void emitOp(byte op) {
+        emitByte(op);
+        adjustStack(stackEffect(op));
+    }
+
+    private void emitByte(int value) {
+        currentChunk().write((byte) value, line);
+    }
+
+    private void emitShort(int value) {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    /**
+     * Tracks the operand stack depth so each function records the most slots it
+     * can need, letting the VM size its stack once per call.
+     */
+    private void adjustStack(int delta) {
+        current.stackDepth += delta;
+        if (current.stackDepth > current.function.maxStack) {
+            current.function.maxStack = current.stackDepth;
+        }
+    }
+
+    // Effects of call instructions depend on their argument count and are
+    // applied by the caller.
+    private static int stackEffect(byte op) {
+        switch (op) {
+            case OpCode.OP_CONSTANT:
+            case OpCode.OP_NIL:
+            case OpCode.OP_TRUE:
+            case OpCode.OP_FALSE:
+            case OpCode.OP_GET_LOCAL:
+            case OpCode.OP_GET_GLOBAL:
+            case OpCode.OP_GET_UPVALUE:
+            case OpCode.OP_CLOSURE:
+            case OpCode.OP_CLASS:
+                return 1;
+            case OpCode.OP_POP:
+            case OpCode.OP_DEFINE_GLOBAL:
+            case OpCode.OP_SET_PROPERTY:
+            case OpCode.OP_GET_SUPER:
+            case OpCode.OP_EQUAL:
+            case OpCode.OP_GREATER:
+            case OpCode.OP_GREATER_EQUAL:
+            case OpCode.OP_LESS:
+            case OpCode.OP_LESS_EQUAL:
+            case OpCode.OP_ADD:
+            case OpCode.OP_SUBTRACT:
+            case OpCode.OP_MULTIPLY:
+            case OpCode.OP_DIVIDE:
+            case OpCode.OP_PRINT:
+            case OpCode.OP_CLOSE_UPVALUE:
+            case OpCode.OP_RETURN:
+            case OpCode.OP_INHERIT:
+            case OpCode.OP_METHOD:
+                return -1;
+
+            default:
+                return 0;
+        }
+    }
+}
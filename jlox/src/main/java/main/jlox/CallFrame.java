@@ -0,0 +1,7 @@
+package main.jlox;
+
+class CallFrame {
+    ObjClosure closure;
+    int ip;
+    int slots;
+}
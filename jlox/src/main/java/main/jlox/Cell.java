@@ -0,0 +1,14 @@
+package main.jlox;
+
+/**
+ * A box for a captured local that is reassigned after closures capture it, or
+ * captured before it is initialized. The declaring frame and every closure
+ * hold the same cell, so they all see the latest value.
+ */
+final class Cell {
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,87 @@
+package main.jlox;
+
+/**
+ * Bulk searches the {@link Scanner} makes through its source when the next
+ * characters cannot be tokens: runs of blanks, the text of a comment, the
+ * contents of a string. Finding the end of a comment or string leans on
+ * {@link String#indexOf}, which the JVM already runs with vector
+ * instructions. With the {@code jdk.incubator.vector} module loaded,
+ * {@link VectorCharSearch} also skips long blank runs and counts the lines
+ * of a string a vector of characters at a time.
+ *
+ * Set {@code -Djlox.vector=false} to keep to the scalar search.
+ */
+abstract class CharSearch {
+    // copying the source for vectors does not pay off on short scripts
+    private static final int MIN_VECTOR_LENGTH = 1 << 12;
+
+    private static final boolean VECTOR = Boolean.parseBoolean(System.getProperty("jlox.vector", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    final String source;
+
+    CharSearch(String source) {
+        this.source = source;
+    }
+
+    /**
+     * The search that suits {@code source}: by vectors when they are
+     * available and the source is long enough to make up for the copy.
+     */
+    static CharSearch of(String source) {
+        if (VECTOR && source.length() >= MIN_VECTOR_LENGTH)
+            return new VectorCharSearch(source);
+
+        return new Scalar(source);
+    }
+
+    /**
+     * Returns the index of the first character from {@code from} that is not
+     * a space, tab or carriage return, or {@code end}.
+     */
+    abstract int skipBlanks(int from, int end);
+
+    /**
+     * Returns the index of the first {@code c} from {@code from}, or
+     * {@code end}.
+     */
+    int find(char c, int from, int end) {
+        int index = source.indexOf(c, from);
+        return index == -1 || index >= end ? end : index;
+    }
+
+    /**
+     * Returns the number of times {@code c} occurs from {@code from} up to
+     * {@code to}.
+     */
+    abstract int count(char c, int from, int to);
+
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    static final class Scalar extends CharSearch {
+        Scalar(String source) {
+            super(source);
+        }
+
+        @Override
+        int skipBlanks(int from, int end) {
+            while (from < end && isBlank(source.charAt(from))) {
+                ++from;
+            }
+
+            return from;
+        }
+
+        @Override
+        int count(char c, int from, int to) {
+            int count = 0;
+            for (int index = source.indexOf(c, from); index != -1 && index < to; index = source.indexOf(c, index + 1)) {
+                ++count;
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package main.jlox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class Chunk {
+    byte[] code = new byte[8];
+    int[] lines = new int[8];
+    int count = 0;
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+    private final Map<Object, Integer> literals = new HashMap<>();
+
+    void write(byte value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+
+        code[count] = value;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        // strings and numbers are interned so repeated literals share a slot
+        boolean literal = value instanceof Double || value instanceof String;
+        if (literal) {
+            Integer existing = literals.get(value);
+            if (existing != null)
+                return existing;
+        }
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+
+        int index = constantCount++;
+        constants[index] = value;
+        if (literal)
+            literals.put(value, index);
+
+        return index;
+    }
+}
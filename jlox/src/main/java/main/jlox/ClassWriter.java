@@ -0,0 +1,399 @@
+package main.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer for {@link JitCompiler}. Classes are
+ * written as version 49 so the JVM verifies them by type inference and no
+ * StackMapTable frames are needed.
+ */
+class ClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+
+    ClassWriter(String name, String superName) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+    }
+
+    void field(int access, String name, String descriptor) {
+        fields.add(member(access, name, descriptor, null));
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        methods.add(member(access, name, descriptor, code));
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> out.writeUTF(value));
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 7, out -> out.writeShort(name));
+    }
+
+    int string(String value) {
+        int utf = utf8(value);
+        return constant("S" + value, 8, out -> out.writeShort(utf));
+    }
+
+    int integer(int value) {
+        return constant("I" + value, 3, out -> out.writeInt(value));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+
+        return constant(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    @FunctionalInterface
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, int tag, PoolEntry entry) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null)
+            return existing;
+
+        try {
+            pool.writeByte(tag);
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int index = poolCount++;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private byte[] member(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+
+            if (code == null) {
+                out.writeShort(0);
+            } else {
+                byte[] body = code.toByteArray();
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + body.length);
+                out.writeShort(code.maxStack);
+                out.writeShort(code.maxLocals);
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A method body under construction. Tracks the operand stack depth as
+     * instructions are emitted so max_stack can be written without a separate
+     * analysis pass.
+     */
+    static class Code {
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int ALOAD = 0x19;
+        static final int AALOAD = 0x32;
+        static final int ASTORE = 0x3a;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int GOTO = 0xa7;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int PUTSTATIC = 0xb3;
+        static final int GETFIELD = 0xb4;
+        static final int PUTFIELD = 0xb5;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int INVOKEINTERFACE = 0xb9;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+        static final int IFNULL = 0xc6;
+
+        static class Label {
+            private int position = -1;
+            private final List<Integer> fixups = new ArrayList<>();
+        }
+
+        private final ClassWriter owner;
+        private byte[] code = new byte[64];
+        private int length = 0;
+        private int stack = 0;
+        int maxStack = 0;
+        int maxLocals;
+
+        Code(ClassWriter owner, int maxLocals) {
+            this.owner = owner;
+            this.maxLocals = maxLocals;
+        }
+
+        int length() {
+            return length;
+        }
+
+        int newLocal() {
+            return maxLocals++;
+        }
+
+        void op(int opcode, int stackDelta) {
+            emit(opcode);
+            adjust(stackDelta);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                emit(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                emitShort(value);
+            } else {
+                op(LDC_W, 1);
+                emitShort(owner.integer(value));
+            }
+        }
+
+        void pushString(String value) {
+            op(LDC_W, 1);
+            emitShort(owner.string(value));
+        }
+
+        void load(int local) {
+            op(ALOAD, 1);
+            emit(local);
+        }
+
+        void store(int local) {
+            op(ASTORE, -1);
+            emit(local);
+        }
+
+        void getStatic(String className, String name, String descriptor) {
+            op(GETSTATIC, 1);
+            emitShort(owner.fieldRef(className, name, descriptor));
+        }
+
+        void putStatic(String className, String name, String descriptor) {
+            op(PUTSTATIC, -1);
+            emitShort(owner.fieldRef(className, name, descriptor));
+        }
+
+        void getField(String className, String name, String descriptor) {
+            op(GETFIELD, 0);
+            emitShort(owner.fieldRef(className, name, descriptor));
+        }
+
+        void putField(String className, String name, String descriptor) {
+            op(PUTFIELD, -2);
+            emitShort(owner.fieldRef(className, name, descriptor));
+        }
+
+        void invokeStatic(String className, String name, String descriptor) {
+            op(INVOKESTATIC, stackEffect(descriptor));
+            emitShort(owner.methodRef(className, name, descriptor));
+        }
+
+        void invokeVirtual(String className, String name, String descriptor) {
+            op(INVOKEVIRTUAL, stackEffect(descriptor) - 1);
+            emitShort(owner.methodRef(className, name, descriptor));
+        }
+
+        void invokeSpecial(String className, String name, String descriptor) {
+            op(INVOKESPECIAL, stackEffect(descriptor) - 1);
+            emitShort(owner.methodRef(className, name, descriptor));
+        }
+
+        void invokeInterface(String className, String name, String descriptor) {
+            int effect = stackEffect(descriptor) - 1;
+            op(INVOKEINTERFACE, effect);
+            emitShort(owner.interfaceMethodRef(className, name, descriptor));
+            emit(1 + countArguments(descriptor));
+            emit(0);
+        }
+
+        void typeOp(int opcode, String className) {
+            op(opcode, 0);
+            emitShort(owner.classRef(className));
+        }
+
+        void jump(int opcode, Label target) {
+            int at = length;
+            op(opcode, opcode == GOTO ? 0 : -1);
+            if (target.position >= 0) {
+                emitShort(target.position - at);
+            } else {
+                target.fixups.add(at);
+                emitShort(0);
+            }
+        }
+
+        void mark(Label label) {
+            label.position = length;
+            for (int at : label.fixups) {
+                int offset = label.position - at;
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+        }
+
+        /**
+         * Resets the tracked depth at a point only reachable by a jump, such as
+         * the code following a goto.
+         */
+        void setStack(int depth) {
+            stack = depth;
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(code, length);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack)
+                maxStack = stack;
+        }
+
+        private void emit(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+
+            code[length++] = (byte) value;
+        }
+
+        private void emitShort(int value) {
+            emit(value >> 8);
+            emit(value);
+        }
+
+        private static int countArguments(String descriptor) {
+            int count = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                while (c == '[') {
+                    c = descriptor.charAt(++i);
+                }
+
+                if (c == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+
+                i++;
+                count++;
+            }
+
+            return count;
+        }
+
+        private static int stackEffect(String descriptor) {
+            boolean returnsValue = !descriptor.endsWith(")V");
+            return (returnsValue ? 1 : 0) - countArguments(descriptor);
+        }
+    }
+}
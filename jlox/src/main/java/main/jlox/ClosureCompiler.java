@@ -0,0 +1,932 @@
+package main.jlox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a resolved syntax tree once into a tree of closures. Each closure
+ * holds its children, resolved slots and chosen operator directly, so running
+ * the program never goes through a visitor or back to the syntax tree; tokens
+ * are kept only to report errors.
+ */
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Code>, Stmt.Visitor<ClosureCompiler.Action> {
+    /**
+     * A compiled expression.
+     */
+    interface Code {
+        Object run(Environment frame);
+    }
+
+    /**
+     * A compiled condition, tested without boxing a Boolean.
+     */
+    interface Test {
+        boolean test(Environment frame);
+    }
+
+    /**
+     * A compiled statement. Returns null when it completes normally, or the
+     * value of the return statement it finished with, {@link #NIL} standing in
+     * for nil.
+     */
+    interface Action {
+        Object run(Environment frame);
+    }
+
+    private interface Store {
+        void store(Environment frame, Object value);
+    }
+
+    static final Object NIL = new Object();
+
+    /**
+     * The compiled body of a function declaration, shared by all its closures.
+     */
+    private static final class Body implements FunctionBody {
+        private final Action body;
+
+        Body(Action body) {
+            this.body = body;
+        }
+
+        @Override
+        public Object execute(Environment frame) {
+            Object result = body.run(frame);
+            return result == NIL ? null : result;
+        }
+    }
+
+    private final Interpreter interpreter;
+
+    // the declaration compiled for the tier policy while its call sites may speculate
+    private Stmt.Function speculating = null;
+
+    ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    Action compile(List<Stmt> statements) {
+        return sequence(compileStatements(statements));
+    }
+
+    /**
+     * Compiles the body of {@code declaration} for {@link TierPolicy}. When
+     * {@code speculate} is set, calls to global functions are linked to the
+     * function the global holds now, guarded by an identity check that
+     * deoptimizes the declaration when it fails.
+     */
+    FunctionBody compileTier(Stmt.Function declaration, boolean speculate) {
+        speculating = speculate ? declaration : null;
+        try {
+            return new Body(sequence(compileStatements(declaration.body)));
+        } finally {
+            speculating = null;
+        }
+    }
+
+    /**
+     * Compiles the iterations of a loop the interpreter is already running:
+     * the condition, body and increment, without a For's initializer and
+     * scope.
+     */
+    Action compileLoop(Stmt.While loop) {
+        return compile(loop);
+    }
+
+    Action compileLoop(Stmt.For loop) {
+        return loop(loop);
+    }
+
+    private Action compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Code compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Action[] compileStatements(List<Stmt> statements) {
+        Action[] actions = new Action[statements.size()];
+        for (int i = 0; i < actions.length; ++i) {
+            actions[i] = compile(statements.get(i));
+        }
+
+        return actions;
+    }
+
+    private Code[] compileArguments(List<Expr> expressions) {
+        Code[] arguments = new Code[expressions.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = compile(expressions.get(i));
+        }
+
+        return arguments;
+    }
+
+    private Body compileFunction(Stmt.Function function) {
+        // nested functions live longer than the speculating declaration's body
+        Stmt.Function outer = speculating;
+        speculating = null;
+        try {
+            return new Body(sequence(compileStatements(function.body)));
+        } finally {
+            speculating = outer;
+        }
+    }
+
+    private static Action sequence(Action[] actions) {
+        switch (actions.length) {
+            case 0:
+                return frame -> null;
+            case 1:
+                return actions[0];
+            case 2: {
+                Action first = actions[0];
+                Action second = actions[1];
+                return frame -> {
+                    Object result = first.run(frame);
+                    return result != null ? result : second.run(frame);
+                };
+            }
+
+            default:
+                return frame -> {
+                    for (Action action : actions) {
+                        Object result = action.run(frame);
+                        if (result != null)
+                            return result;
+                    }
+
+                    return null;
+                };
+        }
+    }
+
+    /**
+     * Runs {@code body} in an environment of its own, if the resolver gave it
+     * one, taken from the frame stack unless it escapes.
+     */
+    private Action scoped(Action body, int size, boolean escapes) {
+        if (size == 0)
+            return body;
+
+        if (escapes)
+            return frame -> body.run(new Environment(frame, size));
+
+        FrameStack frames = interpreter.frames;
+        return frame -> {
+            try {
+                return body.run(frames.push(frame, size));
+            } finally {
+                frames.pop(size);
+            }
+        };
+    }
+
+    private Store define(int slot, Token name) {
+        if (slot == -1) {
+            GlobalEnvironment.Global global = interpreter.globals.global(name.symbol);
+            return (frame, value) -> global.define(value);
+        }
+
+        return (frame, value) -> frame.values[slot] = value;
+    }
+
+    private Code read(Token name, int depth, int slot, boolean cell) {
+        if (cell)
+            return frame -> ((Cell) frame.getAt(depth, slot)).value;
+
+        if (depth == -1) {
+            GlobalEnvironment.Global global = interpreter.globals.global(name.symbol);
+            return frame -> global.get(name);
+        }
+
+        if (depth == 0)
+            return frame -> frame.values[slot];
+
+        return frame -> frame.getAt(depth, slot);
+    }
+
+    private static Object[] run(Code[] arguments, Environment frame) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = arguments[i].run(frame);
+        }
+
+        return values;
+    }
+
+    @Override
+    public Code visitAssignExpr(Expr.Assign expr) {
+        Code value = compile(expr.value);
+        int depth = expr.depth;
+        int slot = expr.slot;
+
+        if (expr.cell) {
+            return frame -> {
+                Object result = value.run(frame);
+                ((Cell) frame.getAt(depth, slot)).value = result;
+                return result;
+            };
+        }
+
+        if (depth == -1) {
+            GlobalEnvironment.Global global = interpreter.globals.global(expr.name.symbol);
+            Token name = expr.name;
+            return frame -> {
+                Object result = value.run(frame);
+                global.assign(name, result);
+                return result;
+            };
+        }
+
+        if (depth == 0) {
+            return frame -> {
+                Object result = value.run(frame);
+                frame.values[slot] = result;
+                return result;
+            };
+        }
+
+        return frame -> {
+            Object result = value.run(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Code visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator;
+
+        switch (operator.type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL: {
+                Test comparison = comparison(expr);
+                return frame -> comparison.test(frame);
+            }
+
+            default:
+                break;
+        }
+
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+
+        switch (operator.type) {
+            case BANG_EQUAL:
+                return frame -> !Interpreter.isEqual(left.run(frame), right.run(frame));
+            case EQUAL_EQUAL:
+                return frame -> Interpreter.isEqual(left.run(frame), right.run(frame));
+            case PLUS:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a + (double) b;
+                    if (a instanceof String && b instanceof String)
+                        return (String) a + (String) b;
+
+                    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+                };
+            case MINUS:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a - (double) b;
+
+                    throw numberOperands(operator);
+                };
+            case SLASH:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a / (double) b;
+
+                    throw numberOperands(operator);
+                };
+            case STAR:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a * (double) b;
+
+                    throw numberOperands(operator);
+                };
+
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + operator.type);
+        }
+    }
+
+    private Test comparison(Expr.Binary expr) {
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type) {
+            case GREATER:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a > (double) b;
+
+                    throw numberOperands(operator);
+                };
+            case GREATER_EQUAL:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a >= (double) b;
+
+                    throw numberOperands(operator);
+                };
+            case LESS:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a < (double) b;
+
+                    throw numberOperands(operator);
+                };
+            case LESS_EQUAL:
+                return frame -> {
+                    Object a = left.run(frame);
+                    Object b = right.run(frame);
+                    if (a instanceof Double && b instanceof Double)
+                        return (double) a <= (double) b;
+
+                    throw numberOperands(operator);
+                };
+
+            default:
+                throw new IllegalArgumentException("Unexpected comparison operator " + operator.type);
+        }
+    }
+
+    private static RuntimeError numberOperands(Token operator) {
+        return new RuntimeError(operator, "Operands must be bumbers.");
+    }
+
+    /**
+     * Compiles {@code expr} for its truthiness. Comparisons, negations and
+     * logical operators test directly instead of producing a Boolean first.
+     */
+    private Test test(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return comparison((Expr.Binary) expr);
+
+                default:
+                    break;
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            return test(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            Test operand = test(((Expr.Unary) expr).right);
+            return frame -> !operand.test(frame);
+        } else if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            Test left = test(logical.left);
+            Test right = test(logical.right);
+            if (logical.operator.type == TokenType.OR)
+                return frame -> left.test(frame) || right.test(frame);
+
+            return frame -> left.test(frame) && right.test(frame);
+        } else if (expr instanceof Expr.Literal) {
+            boolean value = Interpreter.isTruthy(((Expr.Literal) expr).value);
+            return frame -> value;
+        }
+
+        Code code = compile(expr);
+        return frame -> Interpreter.isTruthy(code.run(frame));
+    }
+
+    @Override
+    public Code visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get)
+            return invoke(expr, (Expr.Get) expr.callee);
+
+        if (expr.callee instanceof Expr.Super)
+            return superInvoke(expr, (Expr.Super) expr.callee);
+
+        if (speculating != null && expr.callee instanceof Expr.Variable) {
+            Code linked = speculate(expr, (Expr.Variable) expr.callee);
+            if (linked != null)
+                return linked;
+        }
+
+        Code callee = compile(expr.callee);
+        Code[] arguments = compileArguments(expr.arguments);
+        Token paren = expr.paren;
+
+        switch (arguments.length) {
+            case 0:
+                return frame -> callable(paren, callee.run(frame), 0).call0(interpreter);
+            case 1: {
+                Code first = arguments[0];
+                return frame -> {
+                    Object function = callee.run(frame);
+                    Object a = first.run(frame);
+                    return callable(paren, function, 1).call1(interpreter, a);
+                };
+            }
+            case 2: {
+                Code first = arguments[0];
+                Code second = arguments[1];
+                return frame -> {
+                    Object function = callee.run(frame);
+                    Object a = first.run(frame);
+                    Object b = second.run(frame);
+                    return callable(paren, function, 2).call2(interpreter, a, b);
+                };
+            }
+
+            default:
+                return frame -> {
+                    Object function = callee.run(frame);
+                    Object[] values = run(arguments, frame);
+                    return callable(paren, function, values.length).call(interpreter, values);
+                };
+        }
+    }
+
+    /**
+     * Links a call of a global to the function it holds now, or returns null
+     * if it holds anything else. The global is still read on every call; if it
+     * no longer holds that function, the call goes the generic way and the
+     * declaration being compiled is deoptimized.
+     */
+    private Code speculate(Expr.Call expr, Expr.Variable callee) {
+        if (callee.depth != -1 || callee.cell)
+            return null;
+
+        Token name = callee.name;
+        GlobalEnvironment.Global global = interpreter.globals.global(name.symbol);
+        Object value = global.peek();
+        if (!(value instanceof LoxFunction) || ((LoxFunction) value).arity() != expr.arguments.size())
+            return null;
+
+        LoxFunction target = (LoxFunction) value;
+        Code[] arguments = compileArguments(expr.arguments);
+        Token paren = expr.paren;
+        TierPolicy tiers = interpreter.tiers;
+        Stmt.Function declaration = speculating;
+        int version = declaration.deoptimizations;
+
+        switch (arguments.length) {
+            case 0:
+                return frame -> {
+                    Object function = global.get(name);
+                    if (function == target)
+                        return target.call0(interpreter);
+
+                    tiers.deoptimize(declaration, version);
+                    return callable(paren, function, 0).call0(interpreter);
+                };
+            case 1: {
+                Code first = arguments[0];
+                return frame -> {
+                    Object function = global.get(name);
+                    Object a = first.run(frame);
+                    if (function == target)
+                        return target.call1(interpreter, a);
+
+                    tiers.deoptimize(declaration, version);
+                    return callable(paren, function, 1).call1(interpreter, a);
+                };
+            }
+            case 2: {
+                Code first = arguments[0];
+                Code second = arguments[1];
+                return frame -> {
+                    Object function = global.get(name);
+                    Object a = first.run(frame);
+                    Object b = second.run(frame);
+                    if (function == target)
+                        return target.call2(interpreter, a, b);
+
+                    tiers.deoptimize(declaration, version);
+                    return callable(paren, function, 2).call2(interpreter, a, b);
+                };
+            }
+
+            default:
+                return frame -> {
+                    Object function = global.get(name);
+                    Object[] values = run(arguments, frame);
+                    if (function == target)
+                        return target.call(interpreter, values);
+
+                    tiers.deoptimize(declaration, version);
+                    return callable(paren, function, values.length).call(interpreter, values);
+                };
+        }
+    }
+
+    private static LoxCallable callable(Token paren, Object callee, int count) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        LoxCallable function = (LoxCallable) callee;
+        ExprNode.checkArity(paren, function, count);
+        return function;
+    }
+
+    /**
+     * Calls a method straight from its receiver, found through an inline
+     * cache, without allocating a bound function.
+     */
+    private Code invoke(Expr.Call expr, Expr.Get callee) {
+        Code object = compile(callee.object);
+        Code[] arguments = compileArguments(expr.arguments);
+        Token name = callee.name;
+        Token paren = expr.paren;
+        InlineCache cache = new InlineCache();
+
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (!(receiver instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have properties.");
+            }
+
+            LoxInstance instance = (LoxInstance) receiver;
+            LoxFunction method = cache.method(instance, name);
+            if (method == null) {
+                // a field holding something callable
+                LoxCallable field = callable(paren, cache.get(instance, name), arguments.length);
+                return field.call(interpreter, run(arguments, frame));
+            }
+
+            return invoke(method, instance, paren, arguments, frame);
+        };
+    }
+
+    private Code superInvoke(Expr.Call expr, Expr.Super callee) {
+        Code[] arguments = compileArguments(expr.arguments);
+        Token paren = expr.paren;
+        int thisDepth = callee.thisDepth;
+        int thisSlot = callee.thisSlot;
+
+        return frame -> {
+            LoxFunction method = superMethod(callee, frame);
+            LoxInstance receiver = (LoxInstance) frame.getAt(thisDepth, thisSlot);
+            return invoke(method, receiver, paren, arguments, frame);
+        };
+    }
+
+    private Object invoke(LoxFunction method, LoxInstance receiver, Token paren, Code[] arguments,
+            Environment frame) {
+        int count = arguments.length;
+        if (count > 4) {
+            Object[] values = run(arguments, frame);
+            ExprNode.checkArity(paren, method, count);
+            return method.invoke(interpreter, receiver, values);
+        }
+
+        Object a = count > 0 ? arguments[0].run(frame) : null;
+        Object b = count > 1 ? arguments[1].run(frame) : null;
+        Object c = count > 2 ? arguments[2].run(frame) : null;
+        Object d = count > 3 ? arguments[3].run(frame) : null;
+
+        ExprNode.checkArity(paren, method, count);
+        return method.invoke(interpreter, receiver, count, a, b, c, d);
+    }
+
+    private static LoxFunction superMethod(Expr.Super expr, Environment frame) {
+        LoxFunction method = ((LoxFunction[]) frame.getAt(expr.depth, expr.slot))[expr.index];
+
+        if (method == null) {
+            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+        }
+
+        return method;
+    }
+
+    @Override
+    public Code visitGetExpr(Expr.Get expr) {
+        Code object = compile(expr.object);
+        Token name = expr.name;
+        InlineCache cache = new InlineCache();
+
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (receiver instanceof LoxInstance)
+                return cache.get((LoxInstance) receiver, name);
+
+            throw new RuntimeError(name, "Only instances have properties.");
+        };
+    }
+
+    @Override
+    public Code visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Code visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return frame -> value;
+    }
+
+    @Override
+    public Code visitLogicalExpr(Expr.Logical expr) {
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+
+        if (expr.operator.type == TokenType.OR) {
+            return frame -> {
+                Object value = left.run(frame);
+                return Interpreter.isTruthy(value) ? value : right.run(frame);
+            };
+        }
+
+        return frame -> {
+            Object value = left.run(frame);
+            return Interpreter.isFalsey(value) ? value : right.run(frame);
+        };
+    }
+
+    @Override
+    public Code visitSetExpr(Expr.Set expr) {
+        Code object = compile(expr.object);
+        Code value = compile(expr.value);
+        Token name = expr.name;
+        InlineCache cache = new InlineCache();
+
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (!(receiver instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instance have fields.");
+            }
+
+            Object result = value.run(frame);
+            cache.set((LoxInstance) receiver, name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Code visitSuperExpr(Expr.Super expr) {
+        int thisDepth = expr.thisDepth;
+        int thisSlot = expr.thisSlot;
+
+        return frame -> {
+            LoxFunction method = superMethod(expr, frame);
+            return method.bind((LoxInstance) frame.getAt(thisDepth, thisSlot));
+        };
+    }
+
+    @Override
+    public Code visitThisExpr(Expr.This expr) {
+        return read(expr.keyword, expr.depth, expr.slot, false);
+    }
+
+    @Override
+    public Code visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) {
+            Test operand = test(expr.right);
+            return frame -> !operand.test(frame);
+        }
+
+        Code operand = compile(expr.right);
+        Token operator = expr.operator;
+        return frame -> {
+            Object value = operand.run(frame);
+            if (value instanceof Double)
+                return -(double) value;
+
+            throw new RuntimeError(operator, "Operand must be a number.");
+        };
+    }
+
+    @Override
+    public Code visitVariableExpr(Expr.Variable expr) {
+        return read(expr.name, expr.depth, expr.slot, expr.cell);
+    }
+
+    @Override
+    public Action visitBlockStmt(Stmt.Block stmt) {
+        return scoped(sequence(compileStatements(stmt.statements)), stmt.size, stmt.escapes);
+    }
+
+    @Override
+    public Action visitClassStmt(Stmt.Class stmt) {
+        Code superclass = stmt.superclass != null ? compile(stmt.superclass) : null;
+        Store define = define(stmt.slot, stmt.name);
+        boolean isCell = stmt.cell;
+        String name = stmt.name.lexeme;
+        List<Symbol> superMethods = stmt.superMethods;
+
+        Stmt.Function[] declarations = stmt.methods.toArray(new Stmt.Function[0]);
+        Body[] bodies = new Body[declarations.length];
+        for (int i = 0; i < bodies.length; ++i) {
+            bodies[i] = compileFunction(declarations[i]);
+        }
+
+        return frame -> {
+            Object parent = null;
+            if (superclass != null) {
+                parent = superclass.run(frame);
+                if (!(parent instanceof LoxClass)) {
+                    throw new RuntimeError(stmt.superclass.name, "Superclass must be a class");
+                }
+            }
+
+            // methods that refer to the class capture its cell before it is filled
+            Cell cell = isCell ? new Cell(null) : null;
+            define.store(frame, cell);
+
+            Environment closure = frame;
+            if (superclass != null) {
+                closure = new Environment(frame, 1);
+                closure.define(0, ((LoxClass) parent).superMethods(superMethods));
+            }
+
+            Map<Symbol, LoxFunction> methods = new HashMap<>();
+            for (int i = 0; i < declarations.length; ++i) {
+                Symbol method = declarations[i].name.symbol;
+                methods.put(method, new LoxFunction(declarations[i],
+                        Environment.closure(closure, declarations[i]), method == Symbol.INIT, bodies[i]));
+            }
+
+            LoxClass klass = new LoxClass(name, (LoxClass) parent, methods);
+            if (cell != null) {
+                cell.value = klass;
+            } else {
+                define.store(frame, klass);
+            }
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitExpressionStmt(Stmt.Expression stmt) {
+        Code expression = compile(stmt.expression);
+        return frame -> {
+            expression.run(frame);
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitForStmt(Stmt.For stmt) {
+        Action initializer = stmt.initializer != null ? compile(stmt.initializer) : null;
+        Action loop = loop(stmt);
+
+        return scoped(frame -> {
+            if (initializer != null)
+                initializer.run(frame);
+
+            return loop.run(frame);
+        }, stmt.size, stmt.escapes);
+    }
+
+    private Action loop(Stmt.For stmt) {
+        Test condition = test(stmt.condition);
+        Code increment = stmt.increment != null ? compile(stmt.increment) : null;
+        Action body = compile(stmt.body);
+
+        return frame -> {
+            while (condition.test(frame)) {
+                Object result = body.run(frame);
+                if (result != null)
+                    return result;
+
+                if (increment != null)
+                    increment.run(frame);
+            }
+
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitFunctionStmt(Stmt.Function stmt) {
+        Body body = compileFunction(stmt);
+
+        if (stmt.cell) {
+            // a function that refers to itself captures its cell before it is filled
+            int slot = stmt.slot;
+            return frame -> {
+                Cell cell = new Cell(null);
+                frame.values[slot] = cell;
+                cell.value = new LoxFunction(stmt, Environment.closure(frame, stmt), false, body);
+                return null;
+            };
+        }
+
+        Store define = define(stmt.slot, stmt.name);
+        return frame -> {
+            define.store(frame, new LoxFunction(stmt, Environment.closure(frame, stmt), false, body));
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitIfStmt(Stmt.If stmt) {
+        Test condition = test(stmt.condition);
+        Action thenBranch = compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null)
+            return frame -> condition.test(frame) ? thenBranch.run(frame) : null;
+
+        Action elseBranch = compile(stmt.elseBranch);
+        return frame -> condition.test(frame) ? thenBranch.run(frame) : elseBranch.run(frame);
+    }
+
+    @Override
+    public Action visitPrintStmt(Stmt.Print stmt) {
+        Code expression = compile(stmt.expression);
+        return frame -> {
+            System.out.println(Interpreter.stringify(expression.run(frame)));
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail)
+            return tailCall((Expr.Call) stmt.value);
+
+        if (stmt.value == null)
+            return frame -> NIL;
+
+        Code value = compile(stmt.value);
+        return frame -> {
+            Object result = value.run(frame);
+            return result != null ? result : NIL;
+        };
+    }
+
+    /**
+     * Returns a call to a Lox function in tail position as a {@link TailCall}
+     * for the trampoline in {@link LoxFunction}; anything else is called here.
+     */
+    private Action tailCall(Expr.Call call) {
+        Code callee = compile(call.callee);
+        Code[] arguments = compileArguments(call.arguments);
+        Token paren = call.paren;
+
+        return frame -> {
+            Object function = callee.run(frame);
+            Object[] values = run(arguments, frame);
+
+            LoxCallable target = callable(paren, function, values.length);
+            if (target instanceof LoxFunction)
+                return new TailCall((LoxFunction) target, values);
+
+            Object result = target.call(interpreter, values);
+            return result != null ? result : NIL;
+        };
+    }
+
+    @Override
+    public Action visitVarStmt(Stmt.Var stmt) {
+        Code initializer = stmt.initializer != null ? compile(stmt.initializer) : frame -> null;
+
+        if (stmt.cell) {
+            int slot = stmt.slot;
+            return frame -> {
+                frame.values[slot] = new Cell(initializer.run(frame));
+                return null;
+            };
+        }
+
+        Store define = define(stmt.slot, stmt.name);
+        return frame -> {
+            define.store(frame, initializer.run(frame));
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitWhileStmt(Stmt.While stmt) {
+        Test condition = test(stmt.condition);
+        Action body = compile(stmt.body);
+
+        return frame -> {
+            while (condition.test(frame)) {
+                Object result = body.run(frame);
+                if (result != null)
+                    return result;
+            }
+
+            return null;
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package main.jlox;
+
+/**
+ * How a statement run by the {@link Interpreter} finished. A return travels
+ * back through the enclosing blocks and loops as this status instead of an
+ * exception; the value it returns waits in the interpreter meanwhile.
+ */
+enum Completion {
+    NORMAL,
+    RETURN
+}
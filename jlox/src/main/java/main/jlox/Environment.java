@@ -1,55 +1,43 @@
 package main.jlox;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Environment {
+    // relinked when the frame stack reuses the environment
     Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
-
-    public Environment() {
-        enclosing = null;
-    }
+    final Object[] values;
 
-    public Environment(Environment enclosing) {
+    public Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
-    }
-
-    public void define(String name, Object value) {
-        values.put(name, value);
-    }
-
-    public void assignAt(Integer distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
-    }
-
-    public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        this.values = new Object[size];
+    }
+
+    /**
+     * Builds the closure of {@code function} created while {@code from} is the
+     * current environment: a single environment holding just what the function
+     * captures, the value or {@link Cell} found at each captured depth and slot.
+     */
+    static Environment closure(Environment from, Stmt.Function function) {
+        int[] depths = function.captureDepths;
+        if (depths.length == 0)
+            return null;
+
+        Environment closure = new Environment(null, depths.length);
+        for (int i = 0; i < depths.length; ++i) {
+            closure.values[i] = from.getAt(depths[i], function.captureSlots[i]);
         }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return closure;
     }
 
-    public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    public void define(int slot, Object value) {
+        values[slot] = value;
     }
 
-    public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-
-        if (enclosing != null)
-            return enclosing.get(name);
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).values[slot] = value;
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    public Object getAt(int distance, int slot) {
+        return ancestor(distance).values[slot];
     }
 
     private Environment ancestor(int distance) {
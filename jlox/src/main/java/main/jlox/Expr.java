@@ -31,6 +31,10 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot = -1;
+        boolean cell = false;
+        GlobalEnvironment.Global global = null;
     }
 
     static class Binary extends Expr {
@@ -65,6 +69,7 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        LoxCallable checked = null;
     }
 
     static class Get extends Expr {
@@ -80,6 +85,7 @@ abstract class Expr {
 
         final Expr object;
         final Token name;
+        InlineCache cache = new InlineCache();
     }
 
     static class Grouping extends Expr {
@@ -140,6 +146,7 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        InlineCache cache = new InlineCache();
     }
 
     static class Super extends Expr {
@@ -155,6 +162,11 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+        int depth = -1;
+        int slot = -1;
+        int thisDepth = -1;
+        int thisSlot = -1;
+        int index = -1;
     }
 
     static class This extends Expr {
@@ -168,6 +180,8 @@ abstract class Expr {
         }
 
         final Token keyword;
+        int depth = -1;
+        int slot = -1;
     }
 
     static class Unary extends Expr {
@@ -196,6 +210,10 @@ abstract class Expr {
         }
 
         final Token name;
+        int depth = -1;
+        int slot = -1;
+        boolean cell = false;
+        GlobalEnvironment.Global global = null;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
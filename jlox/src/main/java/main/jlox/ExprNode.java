@@ -0,0 +1,1001 @@
+package main.jlox;
+
+/**
+ * Executable expression nodes. Operators whose behaviour depends on the
+ * operand types start out uninitialized, specialize on the first values they
+ * see, and fall back to a generic node when a type guard later fails.
+ */
+abstract class ExprNode extends Node {
+    abstract Object execute(Environment frame);
+
+    /**
+     * Evaluates to a primitive double, throwing with the boxed value if the
+     * result is not a number. Numeric nodes override this so that arithmetic
+     * chains never box their intermediate results.
+     */
+    double executeDouble(Environment frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double)
+            return (double) value;
+
+        throw new UnexpectedResultException(value);
+    }
+
+    /**
+     * Evaluates to the truthiness of the result. Comparisons and logical
+     * operators override this so conditions do not box a Boolean.
+     */
+    boolean executeBoolean(Environment frame) {
+        return Interpreter.isTruthy(execute(frame));
+    }
+
+    static Object[] executeArguments(ExprNode[] arguments, Environment frame) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = arguments[i].execute(frame);
+        }
+
+        return values;
+    }
+
+    static class Constant extends ExprNode {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return value;
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            return Interpreter.isTruthy(value);
+        }
+    }
+
+    static class LocalRead extends ExprNode {
+        private final int slot;
+
+        LocalRead(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return frame.values[slot];
+        }
+    }
+
+    static class EnclosingRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        EnclosingRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return frame.getAt(depth, slot);
+        }
+    }
+
+    static class CellRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        CellRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return ((Cell) frame.getAt(depth, slot)).value;
+        }
+    }
+
+    static class GlobalRead extends ExprNode {
+        private final GlobalEnvironment.Global global;
+        private final Token name;
+
+        GlobalRead(GlobalEnvironment.Global global, Token name) {
+            this.global = global;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return global.get(name);
+        }
+    }
+
+    /**
+     * Base of nodes that evaluate one child and then do something with it.
+     */
+    abstract static class UnaryNode extends ExprNode {
+        ExprNode operand;
+
+        UnaryNode(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (operand == oldChild)
+                operand = (ExprNode) newChild;
+        }
+    }
+
+    static class LocalWrite extends UnaryNode {
+        private final int slot;
+
+        LocalWrite(int slot, ExprNode value) {
+            super(value);
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = operand.execute(frame);
+            frame.values[slot] = value;
+            return value;
+        }
+    }
+
+    static class EnclosingWrite extends UnaryNode {
+        private final int depth;
+        private final int slot;
+
+        EnclosingWrite(int depth, int slot, ExprNode value) {
+            super(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = operand.execute(frame);
+            frame.assignAt(depth, slot, value);
+            return value;
+        }
+    }
+
+    static class CellWrite extends UnaryNode {
+        private final int depth;
+        private final int slot;
+
+        CellWrite(int depth, int slot, ExprNode value) {
+            super(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = operand.execute(frame);
+            ((Cell) frame.getAt(depth, slot)).value = value;
+            return value;
+        }
+    }
+
+    static class GlobalWrite extends UnaryNode {
+        private final GlobalEnvironment.Global global;
+        private final Token name;
+
+        GlobalWrite(GlobalEnvironment.Global global, Token name, ExprNode value) {
+            super(value);
+            this.global = global;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = operand.execute(frame);
+            global.assign(name, value);
+            return value;
+        }
+    }
+
+    static class Negate extends UnaryNode {
+        private final Token operator;
+
+        Negate(Token operator, ExprNode operand) {
+            super(operand);
+            this.operator = operator;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Environment frame) {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number.");
+            }
+        }
+    }
+
+    static class Not extends UnaryNode {
+        Not(ExprNode operand) {
+            super(operand);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeBoolean(frame);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            return !operand.executeBoolean(frame);
+        }
+    }
+
+    /**
+     * Base of nodes with a left and right operand. {@link #execute} evaluates
+     * both in order and hands them to {@link #executeWith}, so a specialization
+     * that fails its guard can pass the values on to its replacement without
+     * evaluating the operands twice.
+     */
+    abstract static class BinaryNode extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+        final Token operator;
+
+        BinaryNode(ExprNode left, Token operator, ExprNode right) {
+            this.left = adopt(left);
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        BinaryNode(BinaryNode other) {
+            this(other.left, other.operator, other.right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return executeWith(leftValue, rightValue);
+        }
+
+        abstract Object executeWith(Object left, Object right);
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            if (right == oldChild)
+                right = (ExprNode) newChild;
+        }
+
+        void checkNumberOperands(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return;
+
+            throw new RuntimeError(operator, "Operands must be bumbers.");
+        }
+    }
+
+    /**
+     * Base of operators producing a number from two numbers. Operands are
+     * evaluated with {@link #executeDouble}, and only a non-number operand
+     * drops to the boxed {@link #executeWith}.
+     */
+    abstract static class ArithmeticNode extends BinaryNode {
+        ArithmeticNode(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        ArithmeticNode(BinaryNode other) {
+            super(other);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.value;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return fallback(e.value, right.execute(frame));
+            }
+
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return fallback(leftValue, e.value);
+            }
+
+            return compute(leftValue, rightValue);
+        }
+
+        abstract double compute(double left, double right);
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            checkNumberOperands(left, right);
+            return compute((double) left, (double) right);
+        }
+
+        private double fallback(Object left, Object right) throws UnexpectedResultException {
+            Object result = executeWith(left, right);
+            if (result instanceof Double)
+                return (double) result;
+
+            throw new UnexpectedResultException(result);
+        }
+    }
+
+    /**
+     * Base of the numeric comparisons, which evaluate their operands as
+     * primitive doubles and produce a primitive boolean.
+     */
+    abstract static class ComparisonNode extends BinaryNode {
+        ComparisonNode(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeBoolean(frame);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return (boolean) executeWith(e.value, right.execute(frame));
+            }
+
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return (boolean) executeWith(leftValue, e.value);
+            }
+
+            return compare(leftValue, rightValue);
+        }
+
+        abstract boolean compare(double left, double right);
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            checkNumberOperands(left, right);
+            return compare((double) left, (double) right);
+        }
+    }
+
+    static class Add extends BinaryNode {
+        Add(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return replace(new AddNumbers(this)).executeWith(left, right);
+
+            if (left instanceof String && right instanceof String)
+                return replace(new AddStrings(this)).executeWith(left, right);
+
+            return replace(new AddGeneric(this)).executeWith(left, right);
+        }
+    }
+
+    static class AddNumbers extends ArithmeticNode {
+        AddNumbers(BinaryNode other) {
+            super(other);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left + right;
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return (double) left + (double) right;
+
+            return replace(new AddGeneric(this)).executeWith(left, right);
+        }
+    }
+
+    static class AddStrings extends BinaryNode {
+        AddStrings(BinaryNode other) {
+            super(other);
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof String && right instanceof String)
+                return (String) left + (String) right;
+
+            return replace(new AddGeneric(this)).executeWith(left, right);
+        }
+    }
+
+    static class AddGeneric extends BinaryNode {
+        AddGeneric(BinaryNode other) {
+            super(other);
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            if (left instanceof Double && right instanceof Double)
+                return (double) left + (double) right;
+
+            if (left instanceof String && right instanceof String)
+                return (String) left + (String) right;
+
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+    }
+
+    static class Subtract extends ArithmeticNode {
+        Subtract(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left - right;
+        }
+    }
+
+    static class Multiply extends ArithmeticNode {
+        Multiply(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left * right;
+        }
+    }
+
+    static class Divide extends ArithmeticNode {
+        Divide(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double compute(double left, double right) {
+            return left / right;
+        }
+    }
+
+    static class Greater extends ComparisonNode {
+        Greater(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left > right;
+        }
+    }
+
+    static class GreaterEqual extends ComparisonNode {
+        GreaterEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left >= right;
+        }
+    }
+
+    static class Less extends ComparisonNode {
+        Less(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left < right;
+        }
+    }
+
+    static class LessEqual extends ComparisonNode {
+        LessEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean compare(double left, double right) {
+            return left <= right;
+        }
+    }
+
+    static class Equal extends BinaryNode {
+        Equal(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            Object leftValue = left.execute(frame);
+            return Interpreter.isEqual(leftValue, right.execute(frame));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            return Interpreter.isEqual(left, right);
+        }
+    }
+
+    static class NotEqual extends BinaryNode {
+        NotEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            Object leftValue = left.execute(frame);
+            return !Interpreter.isEqual(leftValue, right.execute(frame));
+        }
+
+        @Override
+        Object executeWith(Object left, Object right) {
+            return !Interpreter.isEqual(left, right);
+        }
+    }
+
+    static class And extends ExprNode {
+        private ExprNode left;
+        private ExprNode right;
+
+        And(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = left.execute(frame);
+            if (Interpreter.isFalsey(value))
+                return value;
+
+            return right.execute(frame);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            return left.executeBoolean(frame) && right.executeBoolean(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            if (right == oldChild)
+                right = (ExprNode) newChild;
+        }
+    }
+
+    static class Or extends ExprNode {
+        private ExprNode left;
+        private ExprNode right;
+
+        Or(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = left.execute(frame);
+            if (Interpreter.isTruthy(value))
+                return value;
+
+            return right.execute(frame);
+        }
+
+        @Override
+        boolean executeBoolean(Environment frame) {
+            return left.executeBoolean(frame) || right.executeBoolean(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            if (right == oldChild)
+                right = (ExprNode) newChild;
+        }
+    }
+
+    /**
+     * Base of the call nodes. The callee and arguments are evaluated before
+     * {@link #dispatch} decides how to invoke the callee.
+     */
+    abstract static class CallNode extends ExprNode {
+        final Interpreter interpreter;
+        ExprNode callee;
+        final ExprNode[] arguments;
+        final Token paren;
+
+        CallNode(Interpreter interpreter, ExprNode callee, Token paren, ExprNode[] arguments) {
+            this.interpreter = interpreter;
+            this.callee = adopt(callee);
+            this.paren = paren;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        CallNode(CallNode other) {
+            this(other.interpreter, other.callee, other.paren, other.arguments);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object function = callee.execute(frame);
+            return dispatch(function, executeArguments(arguments, frame));
+        }
+
+        abstract Object dispatch(Object function, Object[] values);
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (callee == oldChild)
+                callee = (ExprNode) newChild;
+
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == oldChild)
+                    arguments[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class Call extends CallNode {
+        Call(Interpreter interpreter, ExprNode callee, Token paren, ExprNode[] arguments) {
+            super(interpreter, callee, paren, arguments);
+        }
+
+        @Override
+        Object dispatch(Object function, Object[] values) {
+            if (function instanceof LoxFunction) {
+                LoxFunction target = (LoxFunction) function;
+                if (target.arity() == values.length)
+                    return replace(new FunctionCall(this, target.declaration)).dispatch(function, values);
+            } else if (function instanceof LoxClass) {
+                LoxClass target = (LoxClass) function;
+                if (target.arity() == values.length)
+                    return replace(new ClassCall(this, target)).dispatch(function, values);
+            }
+
+            return replace(new GenericCall(this)).dispatch(function, values);
+        }
+    }
+
+    /**
+     * Calls closures of a single declaration. The arity was checked when the
+     * node specialized and cannot differ between closures of the declaration.
+     */
+    static class FunctionCall extends CallNode {
+        private final Stmt.Function declaration;
+
+        FunctionCall(CallNode other, Stmt.Function declaration) {
+            super(other);
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object dispatch(Object function, Object[] values) {
+            if (function instanceof LoxFunction && ((LoxFunction) function).declaration == declaration)
+                return ((LoxFunction) function).call(interpreter, values);
+
+            return replace(new GenericCall(this)).dispatch(function, values);
+        }
+    }
+
+    static class ClassCall extends CallNode {
+        private final LoxClass klass;
+
+        ClassCall(CallNode other, LoxClass klass) {
+            super(other);
+            this.klass = klass;
+        }
+
+        @Override
+        Object dispatch(Object function, Object[] values) {
+            if (function == klass)
+                return klass.call(interpreter, values);
+
+            return replace(new GenericCall(this)).dispatch(function, values);
+        }
+    }
+
+    static class GenericCall extends CallNode {
+        GenericCall(CallNode other) {
+            super(other);
+        }
+
+        @Override
+        Object dispatch(Object function, Object[] values) {
+            return call(interpreter, paren, function, values);
+        }
+    }
+
+    /**
+     * Base of the property read nodes.
+     */
+    abstract static class GetNode extends UnaryNode {
+        final Token name;
+
+        GetNode(ExprNode object, Token name) {
+            super(object);
+            this.name = name;
+        }
+
+        GetNode(GetNode other) {
+            this(other.operand, other.name);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeWith(operand.execute(frame));
+        }
+
+        abstract Object executeWith(Object object);
+    }
+
+    static class Get extends GetNode {
+        Get(ExprNode object, Token name) {
+            super(object, name);
+        }
+
+        @Override
+        Object executeWith(Object object) {
+            if (object instanceof LoxInstance) {
+                Shape shape = ((LoxInstance) object).shape;
+                int slot = shape.slotOf(name.symbol);
+                if (slot != -1)
+                    return replace(new FieldGet(this, shape, slot)).executeWith(object);
+            }
+
+            return replace(new GenericGet(this)).executeWith(object);
+        }
+    }
+
+    /**
+     * Reads a field from instances of a single shape, where it is known to be
+     * in {@code slot}.
+     */
+    static class FieldGet extends GetNode {
+        private final Shape shape;
+        private final int slot;
+
+        FieldGet(GetNode other, Shape shape, int slot) {
+            super(other);
+            this.shape = shape;
+            this.slot = slot;
+        }
+
+        @Override
+        Object executeWith(Object object) {
+            if (object instanceof LoxInstance && ((LoxInstance) object).shape == shape)
+                return ((LoxInstance) object).values[slot];
+
+            return replace(new GenericGet(this)).executeWith(object);
+        }
+    }
+
+    static class GenericGet extends GetNode {
+        GenericGet(GetNode other) {
+            super(other);
+        }
+
+        @Override
+        Object executeWith(Object object) {
+            if (object instanceof LoxInstance) {
+                return ((LoxInstance) object).get(name);
+            }
+
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+    }
+
+    static class Set extends ExprNode {
+        private ExprNode object;
+        private final Token name;
+        private ExprNode value;
+
+        Set(ExprNode object, Token name, ExprNode value) {
+            this.object = adopt(object);
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object target = object.execute(frame);
+
+            if (!(target instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instance have fields.");
+            }
+
+            Object result = value.execute(frame);
+            ((LoxInstance) target).set(name, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild)
+                object = (ExprNode) newChild;
+            if (value == oldChild)
+                value = (ExprNode) newChild;
+        }
+    }
+
+    /**
+     * A call whose callee is a property read. Methods are found through an
+     * inline cache and run with the receiver passed straight into their frame,
+     * so no bound function is allocated.
+     */
+    static class Invoke extends ExprNode {
+        private final Interpreter interpreter;
+        private ExprNode object;
+        private final Token name;
+        private final ExprNode[] arguments;
+        private final Token paren;
+        private final InlineCache cache = new InlineCache();
+
+        Invoke(Interpreter interpreter, ExprNode object, Token name, Token paren, ExprNode[] arguments) {
+            this.interpreter = interpreter;
+            this.object = adopt(object);
+            this.name = name;
+            this.paren = paren;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object receiver = object.execute(frame);
+            if (!(receiver instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have properties.");
+            }
+
+            LoxInstance instance = (LoxInstance) receiver;
+            LoxFunction method = cache.method(instance, name);
+            if (method == null) {
+                Object field = cache.get(instance, name);
+                return call(interpreter, paren, field, executeArguments(arguments, frame));
+            }
+
+            Object[] values = executeArguments(arguments, frame);
+            checkArity(paren, method, values.length);
+            return method.invoke(interpreter, instance, values);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild)
+                object = (ExprNode) newChild;
+
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == oldChild)
+                    arguments[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class SuperInvoke extends ExprNode {
+        private final Interpreter interpreter;
+        private final Super method;
+        private final ExprNode[] arguments;
+        private final Token paren;
+
+        SuperInvoke(Interpreter interpreter, Super method, Token paren, ExprNode[] arguments) {
+            this.interpreter = interpreter;
+            this.method = adopt(method);
+            this.paren = paren;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            LoxFunction function = method.lookup(frame);
+            LoxInstance receiver = method.receiver(frame);
+
+            Object[] values = executeArguments(arguments, frame);
+            checkArity(paren, function, values.length);
+            return function.invoke(interpreter, receiver, values);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == oldChild)
+                    arguments[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static Object call(Interpreter interpreter, Token paren, Object function, Object[] values) {
+        if (!(function instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        LoxCallable callable = (LoxCallable) function;
+        checkArity(paren, callable, values.length);
+        return callable.call(interpreter, values);
+    }
+
+    static void checkArity(Token paren, LoxCallable function, int count) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren,
+                    "Expected " + function.arity() + " arguments but got " + count + ".");
+        }
+    }
+
+    static class Super extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private final int thisDepth;
+        private final int thisSlot;
+        private final int index;
+        private final Token method;
+
+        Super(int depth, int slot, int thisDepth, int thisSlot, int index, Token method) {
+            this.depth = depth;
+            this.slot = slot;
+            this.thisDepth = thisDepth;
+            this.thisSlot = thisSlot;
+            this.index = index;
+            this.method = method;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            LoxFunction function = lookup(frame);
+            return function.bind(receiver(frame));
+        }
+
+        LoxFunction lookup(Environment frame) {
+            LoxFunction function = ((LoxFunction[]) frame.getAt(depth, slot))[index];
+            if (function == null) {
+                throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+            }
+
+            return function;
+        }
+
+        LoxInstance receiver(Environment frame) {
+            return (LoxInstance) frame.getAt(thisDepth, thisSlot);
+        }
+    }
+}
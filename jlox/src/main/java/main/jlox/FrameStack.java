@@ -0,0 +1,86 @@
+package main.jlox;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Environments for activations the resolver found to be non-escaping. Those
+ * are released in strict LIFO order, so each depth of the stack keeps its
+ * environment and hands it to the next activation at that depth instead of
+ * allocating a new one.
+ */
+final class FrameStack {
+    private static boolean statistics = false;
+    private static long pushed = 0;
+    private static long allocated = 0;
+    private static long startBytes;
+    private static long startNanos;
+
+    private Environment[] frames = new Environment[64];
+    private int top = 0;
+
+    Environment push(Environment enclosing, int size) {
+        if (top == frames.length)
+            frames = Arrays.copyOf(frames, top * 2);
+
+        Environment frame = frames[top];
+        if (frame == null || frame.values.length < size) {
+            frame = new Environment(enclosing, size);
+            frames[top] = frame;
+            if (statistics)
+                ++allocated;
+        } else {
+            frame.enclosing = enclosing;
+        }
+
+        ++top;
+        if (statistics)
+            ++pushed;
+
+        return frame;
+    }
+
+    /**
+     * Releases the frame on top of the stack, of which {@code size} slots were
+     * used, dropping its values so they can be collected.
+     */
+    void pop(int size) {
+        Environment frame = frames[--top];
+        Arrays.fill(frame.values, 0, size, null);
+        frame.enclosing = null;
+    }
+
+    static void enableStatistics() {
+        statistics = true;
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    static String statistics() {
+        if (!statistics)
+            return "";
+
+        long bytes = allocatedBytes() - startBytes;
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("frames: %d pooled activations, %d environments allocated for them%n",
+                pushed, allocated));
+        if (startBytes >= 0) {
+            builder.append(String.format("heap: %.1f MB allocated in %.2f s (%.1f MB/s)",
+                    bytes / 1e6, seconds, bytes / 1e6 / seconds));
+        }
+
+        return builder.toString();
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+
+        return -1;
+    }
+}
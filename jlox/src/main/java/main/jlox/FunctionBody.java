@@ -0,0 +1,13 @@
+package main.jlox;
+
+/**
+ * The body of a function as built by one of the alternative engines. A
+ * function without one is interpreted straight from its syntax tree.
+ */
+interface FunctionBody {
+    /**
+     * Runs the body in {@code frame} and returns the value it returned, or
+     * nil.
+     */
+    Object execute(Environment frame);
+}
@@ -0,0 +1,30 @@
+package main.jlox;
+
+/**
+ * The executable body of one function declaration. Every closure of the
+ * declaration shares the root, so specializations made while running one
+ * closure apply to all of them.
+ */
+class FunctionRoot extends Node implements FunctionBody {
+    final Stmt.Function declaration;
+    private final StmtNode[] body;
+
+    FunctionRoot(Stmt.Function declaration, StmtNode[] body) {
+        this.declaration = declaration;
+        this.body = body;
+        for (StmtNode statement : body) {
+            adopt(statement);
+        }
+    }
+
+    @Override
+    public Object execute(Environment frame) {
+        try {
+            StmtNode.executeAll(body, frame);
+        } catch (Return returnValue) {
+            return returnValue.value;
+        }
+
+        return null;
+    }
+}
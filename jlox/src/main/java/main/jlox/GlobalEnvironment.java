@@ -0,0 +1,75 @@
+package main.jlox;
+
+import java.util.Arrays;
+
+public class GlobalEnvironment {
+    /**
+     * The storage of one global. References bind to it once and then skip the
+     * name lookup; it exists as soon as anything refers to the name, and
+     * stays undefined until a declaration runs.
+     */
+    static final class Global {
+        private static final Object UNDEFINED = new Object();
+
+        private Object value = UNDEFINED;
+
+        Object get(Token name) {
+            Object value = this.value;
+            if (value == UNDEFINED)
+                throw undefined(name);
+
+            return value;
+        }
+
+        void assign(Token name, Object value) {
+            if (this.value == UNDEFINED)
+                throw undefined(name);
+
+            this.value = value;
+        }
+
+        /**
+         * The current value, or null while undefined, for code that
+         * speculates on it.
+         */
+        Object peek() {
+            return value == UNDEFINED ? null : value;
+        }
+
+        void define(Object value) {
+            this.value = value;
+        }
+
+        private static RuntimeError undefined(Token name) {
+            return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+    }
+
+    // indexed by symbol id
+    private Global[] values = new Global[Math.max(64, Symbol.count())];
+
+    Global global(Symbol name) {
+        if (name.id >= values.length)
+            values = Arrays.copyOf(values, Math.max(name.id + 1, values.length * 2));
+
+        Global global = values[name.id];
+        if (global == null) {
+            global = new Global();
+            values[name.id] = global;
+        }
+
+        return global;
+    }
+
+    public void define(Symbol name, Object value) {
+        global(name).define(value);
+    }
+
+    public void assign(Token name, Object value) {
+        global(name.symbol).assign(name, value);
+    }
+
+    public Object get(Token name) {
+        return global(name.symbol).get(name);
+    }
+}
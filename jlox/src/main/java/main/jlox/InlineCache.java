@@ -0,0 +1,182 @@
+package main.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A property access cache attached to one {@link Expr.Get} or {@link Expr.Set}.
+ * Entries are keyed by the receiver's {@link Shape}, which also identifies its
+ * class, and record either the field's slot or the method the name resolved to.
+ * A site starts uninitialized, caches one shape, then up to
+ * {@link #POLYMORPHIC_LIMIT} shapes, and past that stops caching and always
+ * takes the full lookup.
+ */
+final class InlineCache {
+    static final int POLYMORPHIC_LIMIT = 4;
+
+    enum State {
+        UNINITIALIZED,
+        MONOMORPHIC,
+        POLYMORPHIC,
+        MEGAMORPHIC
+    }
+
+    private static List<InlineCache> sites = null;
+
+    private final Shape[] shapes = new Shape[POLYMORPHIC_LIMIT];
+    private final int[] slots = new int[POLYMORPHIC_LIMIT];
+    private final LoxFunction[] methods = new LoxFunction[POLYMORPHIC_LIMIT];
+    private final Shape[] transitions = new Shape[POLYMORPHIC_LIMIT];
+    private int count = 0;
+
+    State state = State.UNINITIALIZED;
+    long hits = 0;
+    long misses = 0;
+
+    InlineCache() {
+        if (sites != null)
+            sites.add(this);
+    }
+
+    /**
+     * Reads property {@code name} of {@code instance}, binding it if it is a
+     * method.
+     */
+    Object get(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; ++i) {
+            if (shapes[i] == shape) {
+                hits++;
+                if (methods[i] != null)
+                    return methods[i].bind(instance);
+
+                return instance.values[slots[i]];
+            }
+        }
+
+        misses++;
+        int slot = shape.slotOf(name.symbol);
+        if (slot != -1) {
+            record(shape, slot, null, null);
+            return instance.values[slot];
+        }
+
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        if (method == null)
+            throw new RuntimeError(name, "Undefined property " + name.lexeme + ".");
+
+        record(shape, -1, method, null);
+        return method.bind(instance);
+    }
+
+    /**
+     * Resolves {@code name} on {@code instance} for a method call. Returns the
+     * method without binding it, or null if the name is a field, in which case
+     * the caller reads the field with {@link #get}.
+     */
+    LoxFunction method(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; ++i) {
+            if (shapes[i] == shape) {
+                hits++;
+                return methods[i];
+            }
+        }
+
+        misses++;
+        int slot = shape.slotOf(name.symbol);
+        if (slot != -1) {
+            record(shape, slot, null, null);
+            return null;
+        }
+
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        if (method == null)
+            throw new RuntimeError(name, "Undefined property " + name.lexeme + ".");
+
+        record(shape, -1, method, null);
+        return method;
+    }
+
+    /**
+     * Writes field {@code name} of {@code instance}, adding it if needed. A
+     * cached add replays the recorded shape transition.
+     */
+    void set(LoxInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; ++i) {
+            if (shapes[i] == shape) {
+                hits++;
+                if (transitions[i] != null)
+                    instance.moveTo(transitions[i]);
+
+                instance.values[slots[i]] = value;
+                return;
+            }
+        }
+
+        misses++;
+        int slot = shape.slotOf(name.symbol);
+        Shape transition = null;
+        if (slot == -1) {
+            slot = instance.addField(name.symbol);
+            transition = instance.shape;
+        }
+
+        record(shape, slot, null, transition);
+        instance.values[slot] = value;
+    }
+
+    private void record(Shape shape, int slot, LoxFunction method, Shape transition) {
+        if (state == State.MEGAMORPHIC)
+            return;
+
+        if (count == POLYMORPHIC_LIMIT) {
+            // too many layouts to be worth probing; forget them all
+            state = State.MEGAMORPHIC;
+            count = 0;
+            return;
+        }
+
+        shapes[count] = shape;
+        slots[count] = slot;
+        methods[count] = method;
+        transitions[count] = transition;
+        count++;
+
+        state = count == 1 ? State.MONOMORPHIC : State.POLYMORPHIC;
+    }
+
+    /**
+     * Starts tracking every cache created from now on so {@link #statistics}
+     * can summarize them.
+     */
+    static void enableStatistics() {
+        sites = new ArrayList<>();
+    }
+
+    static String statistics() {
+        if (sites == null)
+            return "";
+
+        long[] sitesByState = new long[State.values().length];
+        long totalHits = 0;
+        long totalMisses = 0;
+        for (InlineCache cache : sites) {
+            if (cache.hits + cache.misses == 0)
+                continue;
+
+            sitesByState[cache.state.ordinal()]++;
+            totalHits += cache.hits;
+            totalMisses += cache.misses;
+        }
+
+        StringBuilder builder = new StringBuilder("inline caches:");
+        for (State state : State.values()) {
+            builder.append(' ').append(state.name().toLowerCase()).append('=').append(sitesByState[state.ordinal()]);
+        }
+        builder.append(" hits=").append(totalHits).append(" misses=").append(totalMisses);
+
+        return builder.toString();
+    }
+}
@@ -1,24 +1,35 @@
 package main.jlox;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private Map<Expr, Integer> locals = new HashMap<>();
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+    private static final int MAX_FIXED_ARITY = 4;
+
+    final GlobalEnvironment globals = new GlobalEnvironment();
+    private Environment environment = null;
+
+    // the value of the return statement whose completion is unwinding
+    private Object returnValue = null;
+    final FrameStack frames = new FrameStack();
+    JitCompiler jit = null;
+    TierPolicy tiers = null;
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        globals.define(Symbol.intern("clock"), new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -33,23 +44,44 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
-    public void executeBlock(List<Stmt> statements, Environment environment) {
+    public Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
-            for (Stmt statement : statements) {
-                execute(statement);
-            }
+            return executeAll(statements);
         } finally {
             this.environment = previous;
         }
     }
 
+    /**
+     * Runs the body of a function in {@code environment} and returns the value
+     * of the return statement it finished with, or nil.
+     */
+    Object executeBody(List<Stmt> statements, Environment environment) {
+        if (executeBlock(statements, environment) == Completion.NORMAL)
+            return null;
+
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    private Completion executeAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            Completion completion = execute(statement);
+            if (completion != Completion.NORMAL)
+                return completion;
+        }
+
+        return Completion.NORMAL;
+    }
+
     public void interpret(List<Stmt> statements) {
         try {
             for (Stmt statement : statements) {
@@ -60,15 +92,42 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
+    /**
+     * Runs a program built by {@link NodeBuilder}. Top-level code has no
+     * environment of its own, exactly as when interpreting the syntax tree.
+     */
+    public void interpret(StmtNode[] program) {
+        try {
+            StmtNode.executeAll(program, null);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Runs a program compiled by {@link ClosureCompiler}, likewise without a
+     * top-level environment.
+     */
+    public void interpret(ClosureCompiler.Action program) {
+        try {
+            program.run(null);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.cell) {
+            ((Cell) environment.getAt(expr.depth, expr.slot)).value = value;
+        } else if (expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
-            globals.assign(expr.name, value);
+            if (expr.global == null)
+                expr.global = globals.global(expr.name.symbol);
+            expr.global.assign(expr.name, value);
         }
 
         return value;
@@ -76,82 +135,351 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
-
         switch (expr.operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
+                return evaluateComparison(expr);
+            case MINUS:
+            case PLUS:
+            case SLASH:
+            case STAR:
+                try {
+                    return evaluateArithmetic(expr);
+                } catch (UnexpectedResultException e) {
+                    return e.value;
+                }
+
+            default:
+                break;
+        }
+
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
+
+            default:
+                break;
+
+        }
+
+        // unreachable code
+        return null;
+    }
+
+    /**
+     * Evaluates {@code expr} expecting a number. Arithmetic sub-expressions are
+     * computed on primitive doubles, so a chain such as {@code a * b + c} boxes
+     * only its final result. Throws with the boxed value if it is not a number.
+     */
+    private double evaluateDouble(Expr expr) throws UnexpectedResultException {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case PLUS:
+                case SLASH:
+                case STAR:
+                    return evaluateArithmetic(binary);
+
+                default:
+                    break;
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            try {
+                return -evaluateDouble(unary.right);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(unary.operator, "Operand must be a number.");
+            }
+        }
+
+        Object value = evaluate(expr);
+        if (value instanceof Double)
+            return (double) value;
+
+        throw new UnexpectedResultException(value);
+    }
+
+    /**
+     * Evaluates {@code expr} for its truthiness without boxing comparison
+     * results.
+     */
+    private boolean evaluateBoolean(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return evaluateComparison(binary);
+
+                default:
+                    break;
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateBoolean(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            return !evaluateBoolean(((Expr.Unary) expr).right);
+        } else if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            if (logical.operator.type == TokenType.OR)
+                return evaluateBoolean(logical.left) || evaluateBoolean(logical.right);
+
+            return evaluateBoolean(logical.left) && evaluateBoolean(logical.right);
+        }
+
+        return isTruthy(evaluate(expr));
+    }
+
+    private double evaluateArithmetic(Expr.Binary expr) throws UnexpectedResultException {
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(arithmetic(expr.operator, e.value, evaluate(expr.right)));
+        }
+
+        double right;
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(arithmetic(expr.operator, left, e.value));
+        }
+
+        switch (expr.operator.type) {
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
+                return left - right;
             case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
+                return left + right;
+            case SLASH:
+                return left / right;
+            case STAR:
+                return left * right;
 
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
+            default:
+                break;
+        }
 
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+        // unreachable code
+        return 0;
+    }
+
+    /**
+     * The boxed arithmetic operators, used once an operand turns out not to be
+     * a number.
+     */
+    private Object arithmetic(Token operator, Object left, Object right) {
+        if (operator.type == TokenType.PLUS) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+
+            if (left instanceof String && right instanceof String) {
+                return (String) left + (String) right;
+            }
+
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+
+        checkNumberOperands(operator, left, right);
+        switch (operator.type) {
+            case MINUS:
+                return (double) left - (double) right;
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
                 return (double) left / (double) right;
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
                 return (double) left * (double) right;
 
             default:
                 break;
-
         }
 
         // unreachable code
         return null;
     }
 
+    private boolean evaluateComparison(Expr.Binary expr) {
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (UnexpectedResultException e) {
+            checkNumberOperands(expr.operator, e.value, evaluate(expr.right));
+            return false;
+        }
+
+        double right;
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (UnexpectedResultException e) {
+            checkNumberOperands(expr.operator, left, e.value);
+            return false;
+        }
+
+        switch (expr.operator.type) {
+            case GREATER:
+                return left > right;
+            case GREATER_EQUAL:
+                return left >= right;
+            case LESS:
+                return left < right;
+            case LESS_EQUAL:
+                return left <= right;
+
+            default:
+                break;
+        }
+
+        // unreachable code
+        return false;
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get)
+            return invoke(expr, (Expr.Get) expr.callee);
+
+        if (expr.callee instanceof Expr.Super)
+            return superInvoke(expr, (Expr.Super) expr.callee);
+
+        Object callee = evaluate(expr.callee);
+
+        int count = expr.arguments.size();
+        if (count > MAX_FIXED_ARITY) {
+            Object[] arguments = evaluateArguments(expr.arguments);
+            return checkCallee(expr, callee).call(this, arguments);
+        }
+
+        Object a = count > 0 ? evaluate(expr.arguments.get(0)) : null;
+        Object b = count > 1 ? evaluate(expr.arguments.get(1)) : null;
+        Object c = count > 2 ? evaluate(expr.arguments.get(2)) : null;
+        Object d = count > 3 ? evaluate(expr.arguments.get(3)) : null;
+
+        LoxCallable function = checkCallee(expr, callee);
+        switch (count) {
+            case 0:
+                return function.call0(this);
+            case 1:
+                return function.call1(this, a);
+            case 2:
+                return function.call2(this, a, b);
+            case 3:
+                return function.call3(this, a, b, c);
+            default:
+                return function.call4(this, a, b, c, d);
+        }
+    }
+
+    /**
+     * Calls a method straight from its receiver, without the bound function
+     * evaluating the {@link Expr.Get} callee would allocate.
+     */
+    private Object invoke(Expr.Call expr, Expr.Get callee) {
+        Object object = evaluate(callee.object);
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(callee.name, "Only instances have properties.");
+        }
+
+        LoxInstance instance = (LoxInstance) object;
+        LoxFunction method = callee.cache.method(instance, callee.name);
+        if (method == null) {
+            // a field holding something callable
+            Object field = callee.cache.get(instance, callee.name);
+            return checkCallee(expr, field).call(this, evaluateArguments(expr.arguments));
+        }
+
+        return invoke(expr, method, instance);
+    }
+
+    private Object superInvoke(Expr.Call expr, Expr.Super callee) {
+        LoxFunction method = superMethod(callee);
+
+        LoxInstance object = (LoxInstance) environment.getAt(callee.thisDepth, callee.thisSlot);
+
+        return invoke(expr, method, object);
+    }
+
+    private Object invoke(Expr.Call expr, LoxFunction method, LoxInstance receiver) {
+        int count = expr.arguments.size();
+        if (count > MAX_FIXED_ARITY) {
+            Object[] arguments = evaluateArguments(expr.arguments);
+            checkCallee(expr, method);
+            return method.invoke(this, receiver, arguments);
+        }
+
+        Object a = count > 0 ? evaluate(expr.arguments.get(0)) : null;
+        Object b = count > 1 ? evaluate(expr.arguments.get(1)) : null;
+        Object c = count > 2 ? evaluate(expr.arguments.get(2)) : null;
+        Object d = count > 3 ? evaluate(expr.arguments.get(3)) : null;
+
+        checkCallee(expr, method);
+        return method.invoke(this, receiver, count, a, b, c, d);
+    }
+
+    /**
+     * Evaluates a call in tail position. A Lox function is not called here but
+     * returned as a {@link TailCall}, which the trampoline of the returning
+     * function runs once this activation is gone; anything else is called
+     * directly.
+     */
+    private Object tailCall(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        Object[] arguments = evaluateArguments(expr.arguments);
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        LoxCallable function = checkCallee(expr, callee);
+        if (function instanceof LoxFunction)
+            return new TailCall((LoxFunction) function, arguments);
+
+        return function.call(this, arguments);
+    }
+
+    private Object[] evaluateArguments(List<Expr> expressions) {
+        Object[] arguments = new Object[expressions.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = evaluate(expressions.get(i));
         }
 
+        return arguments;
+    }
+
+    /**
+     * Checks that {@code callee} can be called with this call's arguments. The
+     * call site remembers the last callee that passed, so calling the same
+     * function again skips the check.
+     */
+    private LoxCallable checkCallee(Expr.Call expr, Object callee) {
+        if (callee == expr.checked)
+            return expr.checked;
+
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
+        int count = expr.arguments.size();
+        if (count != function.arity()) {
             throw new RuntimeError(expr.paren,
-                    "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+                    "Expected " + function.arity() + " arguments but got " + count + ".");
         }
 
-        return function.call(this, arguments);
+        expr.checked = function;
+        return function;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance) {
-            return ((LoxInstance) object).get(expr.name);
+            return expr.cache.get((LoxInstance) object, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -191,29 +519,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        expr.cache.set((LoxInstance) object, expr.name, value);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
+        LoxFunction method = superMethod(expr);
+
+        LoxInstance object = (LoxInstance) environment.getAt(expr.thisDepth, expr.thisSlot);
 
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        return method.bind(object);
+    }
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+    private LoxFunction superMethod(Expr.Super expr) {
+        LoxFunction method = ((LoxFunction[]) environment.getAt(expr.depth, expr.slot))[expr.index];
 
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
         }
 
-        return method.bind(object);
+        return method;
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookupVariable(expr.keyword, expr);
+        return lookupVariable(expr.keyword, expr.depth, expr.slot, false);
     }
 
     @Override
@@ -237,17 +568,35 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookupVariable(expr.name, expr);
+        // globals bind to their storage the first time they are read
+        if (expr.depth == -1) {
+            if (expr.global == null)
+                expr.global = globals.global(expr.name.symbol);
+            return expr.global.get(expr.name);
+        }
+
+        return lookupVariable(expr.name, expr.depth, expr.slot, expr.cell);
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        // the resolver flattens blocks into the enclosing frame unless they are
+        // top-level blocks with declarations
+        if (stmt.size == 0)
+            return executeAll(stmt.statements);
+
+        if (stmt.escapes)
+            return executeBlock(stmt.statements, new Environment(environment, stmt.size));
+
+        try {
+            return executeBlock(stmt.statements, frames.push(environment, stmt.size));
+        } finally {
+            frames.pop(stmt.size);
+        }
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -256,17 +605,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        // methods that refer to the class capture its cell before it is filled
+        Cell cell = stmt.cell ? new Cell(null) : null;
+        define(stmt.slot, stmt.name, cell);
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            environment.define(0, ((LoxClass) superclass).superMethods(stmt.superMethods));
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, Environment.closure(environment, method),
+                    method.name.symbol == Symbol.INIT);
+            methods.put(method.name.symbol, function);
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
@@ -275,68 +627,156 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             environment = environment.enclosing;
         }
 
-        environment.assign(stmt.name, klass);
-        return null;
+        if (cell != null) {
+            cell.value = klass;
+        } else {
+            define(stmt.slot, stmt.name, klass);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
-        } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+        if (evaluateBoolean(stmt.condition))
+            return execute(stmt.thenBranch);
+        if (stmt.elseBranch != null)
+            return execute(stmt.elseBranch);
 
-        }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitForStmt(Stmt.For stmt) {
+        if (stmt.size == 0)
+            return loop(stmt);
+
+        // one environment for the whole loop, holding the initializer's variable
+        Environment previous = environment;
+        if (stmt.escapes) {
+            environment = new Environment(environment, stmt.size);
+        } else {
+            environment = frames.push(environment, stmt.size);
+        }
+
+        try {
+            return loop(stmt);
+        } finally {
+            environment = previous;
+            if (!stmt.escapes)
+                frames.pop(stmt.size);
+        }
+    }
+
+    private Completion loop(Stmt.For stmt) {
+        if (stmt.initializer != null)
+            execute(stmt.initializer);
+
+        if (stmt.tiered != null)
+            return resume(stmt.tiered.run(environment));
+
+        while (evaluateBoolean(stmt.condition)) {
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL)
+                return completion;
+
+            if (stmt.increment != null)
+                evaluate(stmt.increment);
+
+            if (tiers != null && tiers.onBackEdge(stmt) != null)
+                return resume(stmt.tiered.run(environment));
+        }
+
+        return Completion.NORMAL;
+    }
+
+    /**
+     * Finishes a statement whose remaining iterations ran as compiled code,
+     * turning what the compiled loop returned back into a completion.
+     */
+    private Completion resume(Object result) {
+        if (result == null)
+            return Completion.NORMAL;
+
+        returnValue = result == ClosureCompiler.NIL ? null : result;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        // a function that refers to itself captures its cell before it is filled
+        Cell cell = null;
+        if (stmt.cell) {
+            cell = new Cell(null);
+            define(stmt.slot, stmt.name, cell);
+        }
+
+        LoxFunction function = new LoxFunction(stmt, Environment.closure(environment, stmt), false);
+        if (cell != null) {
+            cell.value = function;
+        } else {
+            define(stmt.slot, stmt.name, function);
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = null;
-        if (stmt.value != null) {
-            value = evaluate(stmt.value);
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail) {
+            returnValue = tailCall((Expr.Call) stmt.value);
+        } else if (stmt.value != null) {
+            returnValue = evaluate(stmt.value);
+        } else {
+            returnValue = null;
         }
 
-        throw new Return(value);
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        if (stmt.tiered != null)
+            return resume(stmt.tiered.run(environment));
+
+        while (evaluateBoolean(stmt.condition)) {
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL)
+                return completion;
+
+            if (tiers != null && tiers.onBackEdge(stmt) != null)
+                return resume(stmt.tiered.run(environment));
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        if (stmt.slot == -1) {
+            if (stmt.global == null)
+                stmt.global = globals.global(stmt.name.symbol);
+            stmt.global.define(value);
+            return Completion.NORMAL;
+        }
+
+        define(stmt.slot, stmt.name, stmt.cell ? new Cell(value) : value);
+        return Completion.NORMAL;
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -353,15 +793,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be bumbers.");
     }
 
-    private boolean isTruthy(Object value) {
+    static boolean isTruthy(Object value) {
         return !isFalsey(value);
     }
 
-    private boolean isFalsey(Object value) {
+    static boolean isFalsey(Object value) {
         return value == null || Boolean.FALSE.equals(value);
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null)
             return true;
 
@@ -371,7 +811,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null)
             return "nil";
 
@@ -388,14 +828,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return object.toString();
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    private void define(int slot, Token name, Object value) {
+        if (slot != -1) {
+            environment.define(slot, value);
+        } else {
+            globals.define(name.symbol, value);
+        }
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookupVariable(Token name, int depth, int slot, boolean cell) {
+        if (cell) {
+            return ((Cell) environment.getAt(depth, slot)).value;
+        } else if (depth != -1) {
+            return environment.getAt(depth, slot);
         } else {
             return globals.get(name);
         }
@@ -0,0 +1,32 @@
+package main.jlox;
+
+/**
+ * Base class of the hidden classes generated by {@link JitCompiler}. One
+ * instance exists per closure; the generated subclass keeps the closure's
+ * environment in a field and forwards to a static method whose parameters and
+ * locals are plain JVM locals. The generated class also overrides the
+ * fixed-arity entry point matching the function's arity.
+ */
+abstract class JitCode {
+    abstract Object call(Interpreter interpreter, Object[] arguments);
+
+    Object call0(Interpreter interpreter) {
+        return call(interpreter, new Object[0]);
+    }
+
+    Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] { a });
+    }
+
+    Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] { a, b });
+    }
+
+    Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] { a, b, c });
+    }
+
+    Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, new Object[] { a, b, c, d });
+    }
+}
@@ -0,0 +1,738 @@
+package main.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates hot {@link Stmt.Function} bodies into JVM methods on hidden
+ * classes so HotSpot can optimize Lox code directly. Parameters and locals
+ * become JVM locals, the closure environment is a field of the generated class,
+ * and a call whose target turns out to be a closure of the same declaration
+ * invokes the generated static method directly.
+ *
+ * Functions that declare nested functions or classes, or that use features the
+ * generator does not handle, keep running in the {@link Interpreter}.
+ */
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_DESC = "L" + OBJECT + ";";
+    private static final String INTERPRETER = "main/jlox/Interpreter";
+    private static final String INTERPRETER_DESC = "L" + INTERPRETER + ";";
+    private static final String ENVIRONMENT = "main/jlox/Environment";
+    private static final String CELL = "main/jlox/Cell";
+    private static final String ENVIRONMENT_DESC = "L" + ENVIRONMENT + ";";
+    private static final String TOKEN = "main/jlox/Token";
+    private static final String TOKEN_DESC = "L" + TOKEN + ";";
+    private static final String GLOBAL = "main/jlox/GlobalEnvironment$Global";
+    private static final String FUNCTION = "main/jlox/Stmt$Function";
+    private static final String LOX_FUNCTION = "main/jlox/LoxFunction";
+    private static final String RUNTIME = "main/jlox/JitRuntime";
+    private static final String JIT_CODE = "main/jlox/JitCode";
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESC = "L" + METHOD_HANDLE + ";";
+    private static final String LOOKUP_DESC = "Ljava/lang/invoke/MethodHandles$Lookup;";
+
+    private static final int INTERPRETER_LOCAL = 0;
+    private static final int CLOSURE_LOCAL = 1;
+    private static final int MAX_LOCALS = 255;
+    private static final int MAX_CODE_LENGTH = 32767;
+    private static final int MAX_FIXED_ARITY = 4;
+    // a call site's handle takes the interpreter and callee ahead of the arguments
+    private static final int MAX_SITE_ARGUMENTS = 250;
+
+    private static class Bailout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Bailout() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class Profile {
+        int calls = 0;
+        boolean failed = false;
+        MethodHandle factory = null;
+    }
+
+    private final GlobalEnvironment globals;
+    private final int threshold;
+    private final Map<Stmt.Function, Profile> profiles = new IdentityHashMap<>();
+
+    // state for the function currently being compiled
+    private String className;
+    private Stmt.Function function;
+    private String bodyDescriptor;
+    private ClassWriter.Code code;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+    private final List<LoxCallSite> callSites = new ArrayList<>();
+    // the JVM local holding each slot of the frame; blocks share the frame
+    private int[] frame;
+    private ClassWriter.Code.Label start;
+
+    JitCompiler(GlobalEnvironment globals, int threshold) {
+        this.globals = globals;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Counts a call to {@code declaration} and returns compiled code bound to
+     * {@code closure} once the declaration is hot, or null while it should keep
+     * being interpreted.
+     */
+    JitCode onCall(Stmt.Function declaration, Environment closure) {
+        Profile profile = profiles.computeIfAbsent(declaration, d -> new Profile());
+        if (profile.failed)
+            return null;
+
+        if (profile.factory == null) {
+            if (++profile.calls < threshold)
+                return null;
+
+            profile.factory = compile(declaration);
+            if (profile.factory == null) {
+                profile.failed = true;
+                return null;
+            }
+        }
+
+        try {
+            return (JitCode) profile.factory.invoke(closure);
+        } catch (Throwable e) {
+            profile.failed = true;
+            return null;
+        }
+    }
+
+    private MethodHandle compile(Stmt.Function declaration) {
+        try {
+            byte[] bytes = generate(declaration);
+
+            // the class initializer moves the call sites' invokers into static final fields
+            MethodHandle[] invokers = new MethodHandle[callSites.size()];
+            for (int i = 0; i < invokers.length; ++i) {
+                invokers[i] = callSites.get(i).dynamicInvoker();
+            }
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(bytes, invokers, true);
+            Class<?> hiddenClass = lookup.lookupClass();
+            lookup.findStaticVarHandle(hiddenClass, "K", Object[].class).set(constants.toArray());
+
+            return lookup.findConstructor(hiddenClass, MethodType.methodType(void.class, Environment.class));
+        } catch (Bailout | ReflectiveOperationException | LinkageError e) {
+            return null;
+        } finally {
+            constants.clear();
+            constantIndex.clear();
+            callSites.clear();
+            frame = null;
+            code = null;
+            start = null;
+        }
+    }
+
+    private byte[] generate(Stmt.Function declaration) {
+        function = declaration;
+        className = "main/jlox/JitCode_" + declaration.name.lexeme;
+        bodyDescriptor = "(" + INTERPRETER_DESC + ENVIRONMENT_DESC
+                + OBJECT_DESC.repeat(declaration.params.size()) + ")" + OBJECT_DESC;
+
+        ClassWriter writer = new ClassWriter(className, JIT_CODE);
+        writer.field(ClassWriter.ACC_STATIC, "K", "[" + OBJECT_DESC);
+        writer.field(ClassWriter.ACC_FINAL, "closure", ENVIRONMENT_DESC);
+
+        // constructor: store the closure in the generated field
+        ClassWriter.Code init = new ClassWriter.Code(writer, 2);
+        init.load(0);
+        init.invokeSpecial(JIT_CODE, "<init>", "()V");
+        init.load(0);
+        init.load(1);
+        init.putField(className, "closure", ENVIRONMENT_DESC);
+        init.op(ClassWriter.Code.RETURN, 0);
+        writer.method(0, "<init>", "(" + ENVIRONMENT_DESC + ")V", init);
+
+        // JitCode.call: unpack the argument array and enter the static body
+        int arity = declaration.params.size();
+        ClassWriter.Code entry = new ClassWriter.Code(writer, 3);
+        entry.load(1);
+        entry.load(0);
+        entry.getField(className, "closure", ENVIRONMENT_DESC);
+        for (int i = 0; i < arity; ++i) {
+            entry.load(2);
+            entry.pushInt(i);
+            entry.op(ClassWriter.Code.AALOAD, -1);
+        }
+        entry.invokeStatic(className, "body", bodyDescriptor);
+        entry.op(ClassWriter.Code.ARETURN, -1);
+        writer.method(0, "call", "(" + INTERPRETER_DESC + "[" + OBJECT_DESC + ")" + OBJECT_DESC, entry);
+
+        // the fixed-arity entry point passes its arguments straight through
+        if (arity <= MAX_FIXED_ARITY) {
+            ClassWriter.Code fixed = new ClassWriter.Code(writer, 2 + arity);
+            fixed.load(1);
+            fixed.load(0);
+            fixed.getField(className, "closure", ENVIRONMENT_DESC);
+            for (int i = 0; i < arity; ++i) {
+                fixed.load(2 + i);
+            }
+            fixed.invokeStatic(className, "body", bodyDescriptor);
+            fixed.op(ClassWriter.Code.ARETURN, -1);
+            writer.method(0, "call" + arity, "(" + INTERPRETER_DESC + OBJECT_DESC.repeat(arity) + ")" + OBJECT_DESC,
+                    fixed);
+        }
+
+        // the function body, with parameters in JVM locals after the closure
+        code = new ClassWriter.Code(writer, 2);
+        frame = new int[declaration.frameSize];
+        for (int i = 0; i < declaration.params.size(); ++i) {
+            frame[i] = code.newLocal();
+        }
+        start = new ClassWriter.Code.Label();
+        code.mark(start);
+
+        for (Stmt statement : declaration.body) {
+            compile(statement);
+        }
+        code.op(ClassWriter.Code.ACONST_NULL, 1);
+        code.op(ClassWriter.Code.ARETURN, -1);
+
+        if (code.maxLocals > MAX_LOCALS || code.length() > MAX_CODE_LENGTH)
+            throw new Bailout();
+
+        writer.method(ClassWriter.ACC_STATIC, "body", bodyDescriptor, code);
+
+        if (!callSites.isEmpty()) {
+            ClassWriter.Code clinit = new ClassWriter.Code(writer, 0);
+            clinit.invokeStatic("java/lang/invoke/MethodHandles", "lookup", "()" + LOOKUP_DESC);
+            clinit.invokeStatic(RUNTIME, "callSites", "(" + LOOKUP_DESC + ")[" + METHOD_HANDLE_DESC);
+            for (int i = 0; i < callSites.size(); ++i) {
+                writer.field(ClassWriter.ACC_STATIC | ClassWriter.ACC_FINAL, "S" + i, METHOD_HANDLE_DESC);
+                clinit.op(ClassWriter.Code.DUP, 1);
+                clinit.pushInt(i);
+                clinit.op(ClassWriter.Code.AALOAD, -1);
+                clinit.putStatic(className, "S" + i, METHOD_HANDLE_DESC);
+            }
+            clinit.op(ClassWriter.Code.POP, -1);
+            clinit.op(ClassWriter.Code.RETURN, 0);
+            writer.method(ClassWriter.ACC_STATIC, "<clinit>", "()V", clinit);
+        }
+
+        return writer.toByteArray();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        code.op(ClassWriter.Code.DUP, 1);
+
+        if (expr.depth == -1) {
+            int value = code.newLocal();
+            code.store(value);
+            loadConstant(globals.global(expr.name.symbol), GLOBAL);
+            loadConstant(expr.name, TOKEN);
+            code.load(value);
+            code.invokeVirtual(GLOBAL, "assign", "(" + TOKEN_DESC + OBJECT_DESC + ")V");
+        } else if (expr.depth == 0) {
+            code.store(frame[expr.slot]);
+        } else {
+            int value = code.newLocal();
+            code.store(value);
+            code.load(CLOSURE_LOCAL);
+            code.pushInt(expr.depth - 1);
+            code.pushInt(expr.slot);
+            if (expr.cell) {
+                code.invokeVirtual(ENVIRONMENT, "getAt", "(II)" + OBJECT_DESC);
+                code.typeOp(ClassWriter.Code.CHECKCAST, CELL);
+                code.load(value);
+                code.putField(CELL, "value", OBJECT_DESC);
+            } else {
+                code.load(value);
+                code.invokeVirtual(ENVIRONMENT, "assignAt", "(II" + OBJECT_DESC + ")V");
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                code.invokeStatic(RUNTIME, "isEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")Z");
+                if (expr.operator.type == TokenType.BANG_EQUAL) {
+                    code.pushInt(1);
+                    code.op(0x82, -1); // ixor
+                }
+                code.invokeStatic(RUNTIME, "box", "(Z)" + OBJECT_DESC);
+                break;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                loadConstant(expr.operator, TOKEN);
+                code.invokeStatic(RUNTIME, runtimeOperator(expr.operator.type),
+                        "(" + OBJECT_DESC + OBJECT_DESC + TOKEN_DESC + ")Z");
+                code.invokeStatic(RUNTIME, "box", "(Z)" + OBJECT_DESC);
+                break;
+            default:
+                loadConstant(expr.operator, TOKEN);
+                code.invokeStatic(RUNTIME, runtimeOperator(expr.operator.type),
+                        "(" + OBJECT_DESC + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+                break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        int callee = code.newLocal();
+        code.store(callee);
+
+        int[] arguments = new int[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            compile(expr.arguments.get(i));
+            arguments[i] = code.newLocal();
+            code.store(arguments[i]);
+        }
+
+        int depth = code.stack();
+        ClassWriter.Code.Label generic = new ClassWriter.Code.Label();
+        ClassWriter.Code.Label done = new ClassWriter.Code.Label();
+
+        if (arguments.length == function.params.size()) {
+            // calling a closure of this same declaration: skip straight to body
+            int target = code.newLocal();
+            code.load(callee);
+            loadConstant(function, FUNCTION);
+            code.invokeStatic(RUNTIME, "directTarget",
+                    "(" + OBJECT_DESC + "L" + FUNCTION + ";)L" + LOX_FUNCTION + ";");
+            code.op(ClassWriter.Code.DUP, 1);
+            code.store(target);
+            code.jump(ClassWriter.Code.IFNULL, generic);
+
+            // the body hands back a call it ends with in tail position, which
+            // LoxFunction.complete then makes
+            code.load(INTERPRETER_LOCAL);
+            code.load(INTERPRETER_LOCAL);
+            code.load(target);
+            code.getField(LOX_FUNCTION, "closure", ENVIRONMENT_DESC);
+            for (int argument : arguments) {
+                code.load(argument);
+            }
+            code.invokeStatic(className, "body", bodyDescriptor);
+            code.invokeStatic(LOX_FUNCTION, "complete",
+                    "(" + INTERPRETER_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+            code.jump(ClassWriter.Code.GOTO, done);
+            code.setStack(depth);
+        }
+
+        code.mark(generic);
+        if (arguments.length <= MAX_SITE_ARGUMENTS) {
+            callSite(expr, callee, arguments);
+        } else {
+            genericCall(expr, callee, arguments, "call");
+        }
+        code.mark(done);
+
+        return null;
+    }
+
+    /**
+     * Compiles a call in tail position that may target this declaration again.
+     * Such a call becomes a jump back to the start of the body with the
+     * parameters and closure replaced, so tail recursion runs in constant Java
+     * stack; any other callee is called and its result returned.
+     */
+    private void tailCall(Expr.Call expr) {
+        compile(expr.callee);
+        int callee = code.newLocal();
+        code.store(callee);
+
+        int[] arguments = new int[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            compile(expr.arguments.get(i));
+            arguments[i] = code.newLocal();
+            code.store(arguments[i]);
+        }
+
+        int depth = code.stack();
+        ClassWriter.Code.Label generic = new ClassWriter.Code.Label();
+
+        int target = code.newLocal();
+        code.load(callee);
+        loadConstant(function, FUNCTION);
+        code.invokeStatic(RUNTIME, "directTarget",
+                "(" + OBJECT_DESC + "L" + FUNCTION + ";)L" + LOX_FUNCTION + ";");
+        code.op(ClassWriter.Code.DUP, 1);
+        code.store(target);
+        code.jump(ClassWriter.Code.IFNULL, generic);
+
+        for (int i = 0; i < arguments.length; ++i) {
+            code.load(arguments[i]);
+            code.store(frame[i]);
+        }
+        code.load(target);
+        code.getField(LOX_FUNCTION, "closure", ENVIRONMENT_DESC);
+        code.store(CLOSURE_LOCAL);
+        code.jump(ClassWriter.Code.GOTO, start);
+        code.setStack(depth);
+
+        code.mark(generic);
+        genericCall(expr, callee, arguments, "tailCall");
+        code.op(ClassWriter.Code.ARETURN, -1);
+    }
+
+    /**
+     * Calls through a {@link LoxCallSite} of its own, whose invoker the class
+     * keeps in a static final field so HotSpot treats it as a constant.
+     */
+    private void callSite(Expr.Call expr, int callee, int[] arguments) {
+        int index = callSites.size();
+        callSites.add(new LoxCallSite(expr.paren, arguments.length));
+
+        code.getStatic(className, "S" + index, METHOD_HANDLE_DESC);
+        code.load(INTERPRETER_LOCAL);
+        code.load(callee);
+        for (int argument : arguments) {
+            code.load(argument);
+        }
+        code.invokeVirtual(METHOD_HANDLE, "invokeExact",
+                "(" + INTERPRETER_DESC + OBJECT_DESC + OBJECT_DESC.repeat(arguments.length) + ")" + OBJECT_DESC);
+    }
+
+    private void genericCall(Expr.Call expr, int callee, int[] arguments, String method) {
+        code.load(INTERPRETER_LOCAL);
+        code.load(callee);
+        loadConstant(expr.paren, TOKEN);
+        code.pushInt(arguments.length);
+        code.typeOp(ClassWriter.Code.ANEWARRAY, OBJECT);
+        for (int i = 0; i < arguments.length; ++i) {
+            code.op(ClassWriter.Code.DUP, 1);
+            code.pushInt(i);
+            code.load(arguments[i]);
+            code.op(ClassWriter.Code.AASTORE, -3);
+        }
+        code.invokeStatic(RUNTIME, method,
+                "(" + INTERPRETER_DESC + OBJECT_DESC + TOKEN_DESC + "[" + OBJECT_DESC + ")" + OBJECT_DESC);
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        loadConstant(expr.name, TOKEN);
+        code.invokeStatic(RUNTIME, "get", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.op(ClassWriter.Code.ACONST_NULL, 1);
+        } else if (expr.value instanceof Boolean) {
+            code.getStatic("java/lang/Boolean", (Boolean) expr.value ? "TRUE" : "FALSE",
+                    "Ljava/lang/Boolean;");
+        } else {
+            loadConstant(expr.value, null);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        ClassWriter.Code.Label end = new ClassWriter.Code.Label();
+
+        compile(expr.left);
+        code.op(ClassWriter.Code.DUP, 1);
+        code.invokeStatic(RUNTIME, "isTruthy", "(" + OBJECT_DESC + ")Z");
+        code.jump(expr.operator.type == TokenType.OR ? ClassWriter.Code.IFNE : ClassWriter.Code.IFEQ, end);
+        code.op(ClassWriter.Code.POP, -1);
+        compile(expr.right);
+        code.mark(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        loadConstant(expr.name, TOKEN);
+        code.invokeStatic(RUNTIME, "checkSetTarget", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+        loadConstant(expr.name, TOKEN);
+        compile(expr.value);
+        code.invokeStatic(RUNTIME, "set",
+                "(" + OBJECT_DESC + TOKEN_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        throw new Bailout();
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        throw new Bailout();
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        if (expr.operator.type == TokenType.BANG) {
+            code.invokeStatic(RUNTIME, "not", "(" + OBJECT_DESC + ")" + OBJECT_DESC);
+        } else {
+            loadConstant(expr.operator, TOKEN);
+            code.invokeStatic(RUNTIME, "negate", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) {
+            loadConstant(globals.global(expr.name.symbol), GLOBAL);
+            loadConstant(expr.name, TOKEN);
+            code.invokeVirtual(GLOBAL, "get", "(" + TOKEN_DESC + ")" + OBJECT_DESC);
+        } else if (expr.depth == 0) {
+            code.load(frame[expr.slot]);
+        } else {
+            code.load(CLOSURE_LOCAL);
+            code.pushInt(expr.depth - 1);
+            code.pushInt(expr.slot);
+            code.invokeVirtual(ENVIRONMENT, "getAt", "(II)" + OBJECT_DESC);
+            if (expr.cell) {
+                code.typeOp(ClassWriter.Code.CHECKCAST, CELL);
+                code.getField(CELL, "value", OBJECT_DESC);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Bailout();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        code.op(ClassWriter.Code.POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        ClassWriter.Code.Label start = new ClassWriter.Code.Label();
+        ClassWriter.Code.Label end = new ClassWriter.Code.Label();
+
+        if (stmt.initializer != null)
+            compile(stmt.initializer);
+
+        code.mark(start);
+        condition(stmt.condition, end);
+        compile(stmt.body);
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            code.op(ClassWriter.Code.POP, -1);
+        }
+        code.jump(ClassWriter.Code.GOTO, start);
+        code.mark(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // a nested function could capture our locals, which live in JVM locals
+        throw new Bailout();
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        ClassWriter.Code.Label elseBranch = new ClassWriter.Code.Label();
+        ClassWriter.Code.Label end = new ClassWriter.Code.Label();
+
+        condition(stmt.condition, elseBranch);
+        compile(stmt.thenBranch);
+        code.jump(ClassWriter.Code.GOTO, end);
+
+        code.mark(elseBranch);
+        if (stmt.elseBranch != null)
+            compile(stmt.elseBranch);
+        code.mark(end);
+
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        code.invokeStatic(RUNTIME, "print", "(" + OBJECT_DESC + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail && ((Expr.Call) stmt.value).arguments.size() == function.params.size()) {
+            tailCall((Expr.Call) stmt.value);
+            return null;
+        }
+
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            code.op(ClassWriter.Code.ACONST_NULL, 1);
+        }
+
+        code.op(ClassWriter.Code.ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            code.op(ClassWriter.Code.ACONST_NULL, 1);
+        }
+
+        int local = code.newLocal();
+        frame[stmt.slot] = local;
+        code.store(local);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        ClassWriter.Code.Label start = new ClassWriter.Code.Label();
+        ClassWriter.Code.Label end = new ClassWriter.Code.Label();
+
+        code.mark(start);
+        condition(stmt.condition, end);
+        compile(stmt.body);
+        code.jump(ClassWriter.Code.GOTO, start);
+        code.mark(end);
+
+        return null;
+    }
+
+    /**
+     * Emits a branch to {@code ifFalse} when {@code expr} is falsey.
+     * Comparisons branch on the primitive result without boxing a Boolean.
+     */
+    private void condition(Expr expr, ClassWriter.Code.Label ifFalse) {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    compile(binary.left);
+                    compile(binary.right);
+                    loadConstant(binary.operator, TOKEN);
+                    code.invokeStatic(RUNTIME, runtimeOperator(binary.operator.type),
+                            "(" + OBJECT_DESC + OBJECT_DESC + TOKEN_DESC + ")Z");
+                    code.jump(ClassWriter.Code.IFEQ, ifFalse);
+                    return;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    compile(binary.left);
+                    compile(binary.right);
+                    code.invokeStatic(RUNTIME, "isEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")Z");
+                    code.jump(binary.operator.type == TokenType.EQUAL_EQUAL
+                            ? ClassWriter.Code.IFEQ
+                            : ClassWriter.Code.IFNE, ifFalse);
+                    return;
+
+                default:
+                    break;
+            }
+        }
+
+        compile(expr);
+        code.invokeStatic(RUNTIME, "isTruthy", "(" + OBJECT_DESC + ")Z");
+        code.jump(ClassWriter.Code.IFEQ, ifFalse);
+    }
+
+    private static String runtimeOperator(TokenType type) {
+        switch (type) {
+            case GREATER:
+                return "greater";
+            case GREATER_EQUAL:
+                return "greaterEqual";
+            case LESS:
+                return "less";
+            case LESS_EQUAL:
+                return "lessEqual";
+            case MINUS:
+                return "subtract";
+            case PLUS:
+                return "add";
+            case SLASH:
+                return "divide";
+            case STAR:
+                return "multiply";
+
+            default:
+                throw new Bailout();
+        }
+    }
+
+    /**
+     * Pushes {@code value} from the generated class's constant array, casting
+     * it to {@code type} unless it is only used as an Object.
+     */
+    private void loadConstant(Object value, String type) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+
+        code.getStatic(className, "K", "[" + OBJECT_DESC);
+        code.pushInt(index);
+        code.op(ClassWriter.Code.AALOAD, -1);
+        if (type != null) {
+            code.typeOp(ClassWriter.Code.CHECKCAST, type);
+        }
+    }
+}
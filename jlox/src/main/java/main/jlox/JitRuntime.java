@@ -0,0 +1,175 @@
+package main.jlox;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Static helpers called from JIT-compiled code. They are small and
+ * monomorphic so HotSpot inlines them into the generated methods; each one
+ * keeps the same checks and error messages as the {@link Interpreter}.
+ */
+final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    static boolean isTruthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        return Interpreter.isEqual(a, b);
+    }
+
+    static Object box(boolean value) {
+        return value;
+    }
+
+    static Object not(Object value) {
+        return !Interpreter.isTruthy(value);
+    }
+
+    static Object negate(Object value, Token operator) {
+        if (!(value instanceof Double))
+            throw new RuntimeError(operator, "Operand must be a number.");
+
+        return -(double) value;
+    }
+
+    static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+
+        if (left instanceof String && right instanceof String) {
+            return (String) left + (String) right;
+        }
+
+        throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+    }
+
+    static Object subtract(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left - (double) right;
+    }
+
+    static Object multiply(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left * (double) right;
+    }
+
+    static Object divide(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left / (double) right;
+    }
+
+    static boolean greater(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left > (double) right;
+    }
+
+    static boolean greaterEqual(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left >= (double) right;
+    }
+
+    static boolean less(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left < (double) right;
+    }
+
+    static boolean lessEqual(Object left, Object right, Token operator) {
+        checkNumberOperands(operator, left, right);
+        return (double) left <= (double) right;
+    }
+
+    static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    static Object get(Object object, Token name) {
+        if (object instanceof LoxInstance) {
+            return ((LoxInstance) object).get(name);
+        }
+
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    static Object checkSetTarget(Object object, Token name) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instance have fields.");
+        }
+
+        return object;
+    }
+
+    static Object set(Object object, Token name, Object value) {
+        ((LoxInstance) object).set(name, value);
+        return value;
+    }
+
+    /**
+     * Returns {@code callee} if it is a closure of {@code declaration}, so the
+     * compiled code can call its own static method directly.
+     */
+    static LoxFunction directTarget(Object callee, Stmt.Function declaration) {
+        if (callee instanceof LoxFunction) {
+            LoxFunction function = (LoxFunction) callee;
+            if (function.declaration == declaration && function.isPlainFunction())
+                return function;
+        }
+
+        return null;
+    }
+
+    static Object call(Interpreter interpreter, Object callee, Token paren, Object[] arguments) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren,
+                    "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+        }
+
+        return function.call(interpreter, arguments);
+    }
+
+    /**
+     * Like {@link #call} for a call in tail position: a Lox function is
+     * returned as a {@link TailCall} for the trampoline to make instead.
+     */
+    static Object tailCall(Interpreter interpreter, Object callee, Token paren, Object[] arguments) {
+        if (callee instanceof LoxFunction) {
+            LoxFunction function = (LoxFunction) callee;
+            if (arguments.length != function.arity()) {
+                throw new RuntimeError(paren,
+                        "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+            }
+
+            return new TailCall(function, arguments);
+        }
+
+        return call(interpreter, callee, paren, arguments);
+    }
+
+    /**
+     * The call site invokers handed to a generated class as its class data,
+     * for its initializer to store in static final fields.
+     */
+    static MethodHandle[] callSites(MethodHandles.Lookup lookup) {
+        try {
+            return MethodHandles.classData(lookup, ConstantDescs.DEFAULT_NAME, MethodHandle[].class);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+
+        throw new RuntimeError(operator, "Operands must be bumbers.");
+    }
+}
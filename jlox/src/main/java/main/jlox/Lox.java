@@ -7,26 +7,67 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Lox {
     private static final Interpreter interpreter = new Interpreter();
+    private static final VM vm = new VM();
+    private static boolean useVm = false;
+    private static boolean useNodes = false;
+    private static boolean useClosures = false;
+    private static boolean parallelScan = false;
     private static boolean hadError = false;
     private static boolean hadRuntimeError = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        int scriptIndex = 0;
+        while (scriptIndex < args.length && args[scriptIndex].startsWith("--")) {
+            String option = args[scriptIndex++];
+            if (option.equals("--vm")) {
+                useVm = true;
+            } else if (option.equals("--nodes")) {
+                useNodes = true;
+            } else if (option.equals("--closures")) {
+                useClosures = true;
+            } else if (option.equals("--parallel-scan")) {
+                parallelScan = true;
+            } else if (option.equals("--ic-stats")) {
+                InlineCache.enableStatistics();
+            } else if (option.equals("--frame-stats")) {
+                FrameStack.enableStatistics();
+            } else if (option.equals("--tiered")) {
+                interpreter.tiers = new TierPolicy(interpreter, Integer.getInteger("jlox.tier.calls", 100),
+                        Integer.getInteger("jlox.tier.loops", 1000));
+            } else if (option.equals("--callsite-stats")) {
+                LoxCallSite.enableStatistics();
+            } else if (option.equals("--tier-stats")) {
+                TierPolicy.enableStatistics();
+            } else if (option.equals("--jit")) {
+                interpreter.jit = new JitCompiler(interpreter.globals, Integer.getInteger("jlox.jit.threshold", 50));
+            } else {
+                usage();
+            }
+        }
+
+        if (args.length - scriptIndex > 1) {
+            usage();
+        } else if (args.length - scriptIndex == 1) {
+            runFile(args[scriptIndex]);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--nodes] [--closures] [--tiered] [--jit] [--parallel-scan]"
+                + " [--ic-stats] [--frame-stats] [--tier-stats] [--callsite-stats] [script]");
+        System.exit(64);
+    }
+
     public static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()));
+        printStatistics();
 
         if (hadError)
             System.exit(65);
@@ -35,6 +76,24 @@ public class Lox {
             System.exit(70);
     }
 
+    private static void printStatistics() {
+        String inlineCaches = InlineCache.statistics();
+        if (!inlineCaches.isEmpty())
+            System.err.println(inlineCaches);
+
+        String frames = FrameStack.statistics();
+        if (!frames.isEmpty())
+            System.err.println(frames);
+
+        String tiers = TierPolicy.statistics();
+        if (!tiers.isEmpty())
+            System.err.println(tiers);
+
+        String callSites = LoxCallSite.statistics();
+        if (!callSites.isEmpty())
+            System.err.println(callSites);
+    }
+
     public static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -51,22 +110,37 @@ public class Lox {
     }
 
     public static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
+        Parser parser;
+        if (parallelScan) {
+            parser = new Parser(new ParallelScanner(ForkJoinPool.commonPool()).scan(source).cursor());
+        } else {
+            parser = new Parser(new Scanner(source).scanTokenStream());
+        }
         List<Stmt> statements = parser.parse();
 
         if (hadError)
             return;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
 
         if (hadError)
             return;
 
-        if (statements != null) {
+        if (statements == null)
+            return;
+
+        if (useVm) {
+            ObjFunction script = new BytecodeCompiler().compile(statements);
+            if (hadError)
+                return;
+
+            vm.interpret(script);
+        } else if (useNodes) {
+            interpreter.interpret(new NodeBuilder(interpreter).build(statements));
+        } else if (useClosures) {
+            interpreter.interpret(new ClosureCompiler(interpreter).compile(statements));
+        } else {
             interpreter.interpret(statements);
         }
     }
@@ -90,7 +164,7 @@ public class Lox {
     }
 
     public static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        System.err.println(error.getMessage() + "\n[line " + error.line + "]");
         hadRuntimeError = true;
     }
 }
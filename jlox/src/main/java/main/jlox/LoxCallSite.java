@@ -0,0 +1,186 @@
+package main.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Collections;
+
+/**
+ * The call site of one call in JIT-compiled code. Its target takes the
+ * interpreter, the callee and the arguments, and starts out linking: the
+ * first call checks the callee as usual, then puts a handle that calls that
+ * very callee behind a guard in front of the current target. A callee the
+ * guards miss relinks the same way, until {@link #MAX_TARGETS} are linked and
+ * the site falls back to checking every call.
+ *
+ * Compiled code invokes the site through a constant handle, so HotSpot
+ * inlines a monomorphic site's callee into the caller, across the boundary
+ * between Lox functions an interface call through {@link LoxCallable} hides.
+ */
+final class LoxCallSite extends MutableCallSite {
+    private static final int MAX_TARGETS = 4;
+    private static final int MAX_FIXED_ARITY = 4;
+
+    private static final MethodHandle LINK;
+    private static final MethodHandle CALL;
+    private static final MethodHandle IS_SAME;
+    private static final MethodHandle IS_DECLARATION;
+    private static final MethodHandle[] FIXED_CALLS = new MethodHandle[MAX_FIXED_ARITY + 1];
+    private static final MethodHandle ARRAY_CALL;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            LINK = lookup.findVirtual(LoxCallSite.class, "link",
+                    MethodType.methodType(Object.class, Interpreter.class, Object.class, Object[].class));
+            CALL = lookup.findVirtual(LoxCallSite.class, "call",
+                    MethodType.methodType(Object.class, Interpreter.class, Object.class, Object[].class));
+            IS_SAME = lookup.findStatic(LoxCallSite.class, "isSame",
+                    MethodType.methodType(boolean.class, Object.class, Object.class));
+            IS_DECLARATION = lookup.findStatic(LoxCallSite.class, "isDeclaration",
+                    MethodType.methodType(boolean.class, Stmt.Function.class, Object.class));
+
+            for (int count = 0; count < FIXED_CALLS.length; ++count) {
+                MethodType type = MethodType.methodType(Object.class, Interpreter.class)
+                        .appendParameterTypes(Collections.nCopies(count, Object.class));
+                FIXED_CALLS[count] = lookup.findVirtual(LoxCallable.class, "call" + count, type);
+            }
+            ARRAY_CALL = lookup.findVirtual(LoxCallable.class, "call",
+                    MethodType.methodType(Object.class, Interpreter.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static boolean statistics = false;
+    private static long links = 0;
+    private static long relinks = 0;
+    private static long megamorphic = 0;
+
+    private final Token paren;
+    private final int count;
+    private int targets = 0;
+    private Stmt.Function lastDeclaration = null;
+
+    LoxCallSite(Token paren, int count) {
+        super(type(count));
+        this.paren = paren;
+        this.count = count;
+        setTarget(LINK.bindTo(this).asCollector(Object[].class, count));
+    }
+
+    /**
+     * The type of a site for {@code count} arguments:
+     * {@code (Interpreter, Object callee, Object... arguments)Object}.
+     */
+    static MethodType type(int count) {
+        return MethodType.methodType(Object.class, Interpreter.class, Object.class)
+                .appendParameterTypes(Collections.nCopies(count, Object.class));
+    }
+
+    private Object link(Interpreter interpreter, Object callee, Object[] arguments) {
+        LoxCallable function = check(callee);
+
+        if (targets < MAX_TARGETS) {
+            setTarget(MethodHandles.guardWithTest(guard(function), target(function), getTarget()));
+            if (function instanceof LoxFunction)
+                lastDeclaration = ((LoxFunction) function).declaration;
+
+            if (statistics) {
+                if (targets == 0)
+                    ++links;
+                else
+                    ++relinks;
+            }
+            ++targets;
+        } else if (targets == MAX_TARGETS) {
+            setTarget(CALL.bindTo(this).asCollector(Object[].class, count));
+            if (statistics)
+                ++megamorphic;
+            ++targets;
+        }
+
+        return function.call(interpreter, arguments);
+    }
+
+    /**
+     * Whether to link {@code function} by its declaration rather than by
+     * itself: once a second closure of the same declaration shows up, so a
+     * site calling freshly created closures does not go megamorphic.
+     */
+    private boolean byDeclaration(LoxCallable function) {
+        return function instanceof LoxFunction && ((LoxFunction) function).declaration == lastDeclaration;
+    }
+
+    private MethodHandle guard(LoxCallable function) {
+        MethodHandle test;
+        if (byDeclaration(function)) {
+            test = IS_DECLARATION.bindTo(lastDeclaration);
+        } else {
+            test = IS_SAME.bindTo(function);
+        }
+
+        return MethodHandles.dropArguments(test, 0, Interpreter.class);
+    }
+
+    /**
+     * Calls {@code function} itself, or whichever callee passed a declaration
+     * guard. Either way the arity is already known to match.
+     */
+    private MethodHandle target(LoxCallable function) {
+        MethodHandle call = count <= MAX_FIXED_ARITY ? FIXED_CALLS[count]
+                : ARRAY_CALL.asCollector(Object[].class, count);
+
+        if (byDeclaration(function)) {
+            // (LoxCallable callee, Interpreter, arguments) as (Interpreter, Object callee, arguments)
+            int[] order = new int[count + 2];
+            order[0] = 1;
+            order[1] = 0;
+            for (int i = 2; i < order.length; ++i) {
+                order[i] = i;
+            }
+
+            MethodHandle dynamic = call.asType(call.type().changeParameterType(0, Object.class));
+            return MethodHandles.permuteArguments(dynamic, type(count), order);
+        }
+
+        return MethodHandles.dropArguments(MethodHandles.insertArguments(call, 0, function), 1, Object.class);
+    }
+
+    private Object call(Interpreter interpreter, Object callee, Object[] arguments) {
+        return check(callee).call(interpreter, arguments);
+    }
+
+    private LoxCallable check(Object callee) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        LoxCallable function = (LoxCallable) callee;
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + count + ".");
+        }
+
+        return function;
+    }
+
+    private static boolean isSame(Object expected, Object callee) {
+        return callee == expected;
+    }
+
+    private static boolean isDeclaration(Stmt.Function declaration, Object callee) {
+        return callee instanceof LoxFunction && ((LoxFunction) callee).declaration == declaration;
+    }
+
+    static void enableStatistics() {
+        statistics = true;
+    }
+
+    static String statistics() {
+        if (!statistics)
+            return "";
+
+        return String.format("call sites: %d linked, %d relinked, %d megamorphic", links, relinks, megamorphic);
+    }
+}
@@ -1,9 +1,33 @@
 package main.jlox;
 
-import java.util.List;
-
+/**
+ * Something Lox code can call. Calls with up to four arguments go through the
+ * fixed-arity entry points so no argument array is needed; the defaults pack
+ * the arguments for {@link #call}, and implementations override the ones they
+ * can serve directly. Callers check the arity before calling.
+ */
 public interface LoxCallable {
     int arity();
 
-    Object call(Interpreter interpreter, List<Object> arguments);
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] { a });
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] { a, b });
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] { a, b, c });
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, new Object[] { a, b, c, d });
+    }
 }
@@ -1,46 +1,102 @@
 package main.jlox;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
-    final Map<String, LoxFunction> methods;
+    final Map<Symbol, LoxFunction> methods;
+    final Shape emptyShape = new Shape(this);
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    // the class's own methods over everything inherited, so a lookup never walks the chain
+    private final Map<Symbol, LoxFunction> table;
+
+    // the most fields any instance has had, used to size new instances
+    int instanceSize = 0;
+
+    // methods never change once the class exists, so neither does init
+    private final LoxFunction initializer;
+    private final int arity;
+
+    LoxClass(String name, LoxClass superclass, Map<Symbol, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
         this.methods = methods;
-    }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
+        if (superclass == null) {
+            this.table = methods;
+        } else {
+            this.table = new HashMap<>(superclass.table);
+            this.table.putAll(methods);
         }
 
-        if (superclass != null) {
-            return superclass.findMethod(name);
+        this.initializer = findMethod(Symbol.INIT);
+        this.arity = initializer == null ? 0 : initializer.arity();
+    }
+
+    public LoxFunction findMethod(Symbol name) {
+        return table.get(name);
+    }
+
+    /**
+     * Looks up, once for a subclass being created, the methods its 'super'
+     * expressions name; see {@link Stmt.Class#superMethods}. Names that do not
+     * resolve are left null, to fail when they are used.
+     */
+    LoxFunction[] superMethods(List<Symbol> names) {
+        LoxFunction[] resolved = new LoxFunction[names.size()];
+        for (int i = 0; i < resolved.length; ++i) {
+            resolved[i] = table.get(names.get(i));
         }
 
-        return null;
+        return resolved;
     }
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
-        if (initializer == null)
-            return 0;
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null) {
+            initializer.invoke(interpreter, instance, arguments);
+        }
+        return instance;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return construct(interpreter, 0, null, null, null, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return construct(interpreter, 1, a, null, null, null);
+    }
 
-        return initializer.arity();
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return construct(interpreter, 2, a, b, null, null);
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return construct(interpreter, 3, a, b, c, null);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return construct(interpreter, 4, a, b, c, d);
+    }
+
+    private LoxInstance construct(Interpreter interpreter, int count, Object a, Object b, Object c, Object d) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke(interpreter, instance, count, a, b, c, d);
         }
         return instance;
     }
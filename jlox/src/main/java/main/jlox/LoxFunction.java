@@ -1,22 +1,40 @@
 package main.jlox;
 
-import java.util.List;
-
 class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
+    final Stmt.Function declaration;
+    final Environment closure;
     private final boolean isInitializer;
+    private final LoxInstance receiver;
+    private final FunctionBody body;
+    private JitCode compiled = null;
 
     LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, null, null);
+    }
+
+    /**
+     * Creates a function whose body runs as {@code body}, built by another
+     * engine, instead of being interpreted from the syntax tree.
+     */
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, FunctionBody body) {
+        this(declaration, closure, isInitializer, null, body);
+    }
+
+    private LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+            LoxInstance receiver, FunctionBody body) {
         this.declaration = declaration;
         this.closure = closure;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
+        this.body = body;
     }
 
     public LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, closure, isInitializer, instance, body);
+    }
+
+    boolean isPlainFunction() {
+        return receiver == null && !isInitializer;
     }
 
     @Override
@@ -25,24 +43,170 @@ class LoxFunction implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); ++i) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call(interpreter, arguments));
+
+        return invoke(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call0(interpreter));
+
+        return invoke(interpreter, receiver, 0, null, null, null, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call1(interpreter, a));
+
+        return invoke(interpreter, receiver, 1, a, null, null, null);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call2(interpreter, a, b));
+
+        return invoke(interpreter, receiver, 2, a, b, null, null);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call3(interpreter, a, b, c));
+
+        return invoke(interpreter, receiver, 3, a, b, c, null);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        if (isCompiled(interpreter))
+            return complete(interpreter, compiled.call4(interpreter, a, b, c, d));
+
+        return invoke(interpreter, receiver, 4, a, b, c, d);
+    }
+
+    private boolean isCompiled(Interpreter interpreter) {
+        // with tiered execution, only functions that left the tree walker are hot enough for the JIT
+        if (compiled == null && interpreter.jit != null && isPlainFunction()
+                && (body != null || interpreter.tiers == null || declaration.tiered != null)) {
+            compiled = interpreter.jit.onCall(declaration, closure);
         }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer)
-                return closure.getAt(0, "this");
+        return compiled != null;
+    }
+
+    /**
+     * Runs the body with {@code receiver} as 'this'. Calling a method through
+     * here skips allocating the bound function {@link #bind} would create.
+     */
+    Object invoke(Interpreter interpreter, LoxInstance receiver, Object[] arguments) {
+        Environment environment = newFrame(interpreter, receiver);
+        System.arraycopy(arguments, 0, environment.values, receiver == null ? 0 : 1, arguments.length);
+        return run(interpreter, environment, receiver);
+    }
+
+    /**
+     * Like {@link #invoke(Interpreter, LoxInstance, Object[])} for calls with
+     * at most four arguments, passed individually; only the first
+     * {@code count} are used.
+     */
+    Object invoke(Interpreter interpreter, LoxInstance receiver, int count, Object a, Object b, Object c,
+            Object d) {
+        Environment environment = newFrame(interpreter, receiver);
+        Object[] values = environment.values;
+        int first = receiver == null ? 0 : 1;
+
+        if (count > 3)
+            values[first + 3] = d;
+        if (count > 2)
+            values[first + 2] = c;
+        if (count > 1)
+            values[first + 1] = b;
+        if (count > 0)
+            values[first] = a;
+
+        return run(interpreter, environment, receiver);
+    }
+
+    /**
+     * Creates the frame of an activation, taking it from the frame stack when
+     * the declaration never lets it escape; {@link #run} releases it.
+     */
+    private Environment newFrame(Interpreter interpreter, LoxInstance receiver) {
+        Environment environment;
+        if (declaration.escapes) {
+            environment = new Environment(closure, declaration.frameSize);
+        } else {
+            environment = interpreter.frames.push(closure, declaration.frameSize);
+        }
+
+        // bound methods keep 'this' in slot 0, ahead of the parameters
+        if (receiver != null)
+            environment.define(0, receiver);
+
+        return environment;
+    }
+
+    private Object run(Interpreter interpreter, Environment environment, LoxInstance receiver) {
+        return complete(interpreter, execute(interpreter, environment, receiver));
+    }
+
+    /**
+     * The trampoline: makes the calls an activation ended with in tail
+     * position, each after the previous activation is gone, so a chain of
+     * tail calls runs in constant Java stack.
+     */
+    static Object complete(Interpreter interpreter, Object result) {
+        while (result instanceof TailCall) {
+            TailCall call = (TailCall) result;
+            result = call.function.step(interpreter, call.arguments);
+        }
+
+        return result;
+    }
 
-            return returnValue.value;
+    /**
+     * Runs one activation, returning rather than making the call it may end
+     * with in tail position.
+     */
+    private Object step(Interpreter interpreter, Object[] arguments) {
+        if (isCompiled(interpreter))
+            return compiled.call(interpreter, arguments);
+
+        Environment environment = newFrame(interpreter, receiver);
+        System.arraycopy(arguments, 0, environment.values, receiver == null ? 0 : 1, arguments.length);
+        return execute(interpreter, environment, receiver);
+    }
+
+    private Object execute(Interpreter interpreter, Environment environment, LoxInstance receiver) {
+        for (int slot : declaration.cellParams) {
+            environment.values[slot] = new Cell(environment.values[slot]);
+        }
+
+        FunctionBody body = this.body;
+        if (body == null && interpreter.tiers != null)
+            body = interpreter.tiers.onCall(declaration);
+
+        Object value;
+        try {
+            if (body != null) {
+                value = body.execute(environment);
+            } else {
+                value = interpreter.executeBody(declaration.body, environment);
+            }
+        } finally {
+            if (!declaration.escapes)
+                interpreter.frames.pop(declaration.frameSize);
         }
 
         if (isInitializer)
-            return closure.getAt(0, "this");
-        return null;
+            return receiver;
+        return value;
     }
 
     @Override
@@ -1,14 +1,18 @@
 package main.jlox;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_VALUES = new Object[0];
+
+    final LoxClass klass;
+    Shape shape;
+    Object[] values;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
+        this.shape = klass.emptyShape;
+
+        // size for the fields earlier instances of the class ended up with
+        this.values = klass.instanceSize == 0 ? NO_VALUES : new Object[klass.instanceSize];
     }
 
     @Override
@@ -17,11 +21,12 @@ public class LoxInstance {
     }
 
     public Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.symbol);
+        if (slot != -1) {
+            return values[slot];
         }
 
-        LoxFunction method = klass.findMethod(name.lexeme);
+        LoxFunction method = klass.findMethod(name.symbol);
         if (method != null)
             return method.bind(this);
 
@@ -29,6 +34,36 @@ public class LoxInstance {
     }
 
     public void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.symbol);
+        if (slot == -1) {
+            slot = addField(name.symbol);
+        }
+
+        values[slot] = value;
+    }
+
+    /**
+     * Moves this instance to the shape with {@code name} added and returns the
+     * new field's slot.
+     */
+    int addField(Symbol name) {
+        moveTo(shape.withField(name));
+        return shape.size - 1;
+    }
+
+    /**
+     * Switches to {@code next}, a shape reached from the current one by adding
+     * fields, growing the value array to fit.
+     */
+    void moveTo(Shape next) {
+        shape = next;
+        if (shape.size > values.length) {
+            Object[] grown = new Object[Math.max(shape.size, values.length * 2)];
+            System.arraycopy(values, 0, grown, 0, values.length);
+            values = grown;
+        }
+
+        if (shape.size > klass.instanceSize)
+            klass.instanceSize = shape.size;
     }
 }
@@ -0,0 +1,32 @@
+package main.jlox;
+
+/**
+ * Base of the self-specializing executable tree built by {@link NodeBuilder}.
+ * A node may replace itself in its parent with a form specialized for the
+ * values it has observed, and replace that again with a generic form when a
+ * later value breaks the specialization's assumptions.
+ */
+abstract class Node {
+    Node parent = null;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null)
+            child.parent = this;
+
+        return child;
+    }
+
+    <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    /**
+     * Swaps {@code oldChild} for {@code newChild} in whichever field holds it.
+     * Only nodes whose children can specialize need to override this.
+     */
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException("Node does not have replaceable children.");
+    }
+}
@@ -0,0 +1,278 @@
+package main.jlox;
+
+import java.util.List;
+
+/**
+ * Translates a resolved syntax tree into the executable node tree. Anything
+ * known statically, such as whether a variable is local to the current frame,
+ * is decided here; type-dependent choices are left to the nodes themselves.
+ */
+class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final Interpreter interpreter;
+
+    NodeBuilder(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    StmtNode[] build(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = build(statements.get(i));
+        }
+
+        return nodes;
+    }
+
+    private StmtNode build(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private ExprNode build(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private FunctionRoot buildFunction(Stmt.Function function) {
+        return new FunctionRoot(function, build(function.body));
+    }
+
+    private ExprNode read(Token name, int depth, int slot, boolean cell) {
+        if (cell)
+            return new ExprNode.CellRead(depth, slot);
+        if (depth == -1)
+            return new ExprNode.GlobalRead(interpreter.globals.global(name.symbol), name);
+        if (depth == 0)
+            return new ExprNode.LocalRead(slot);
+
+        return new ExprNode.EnclosingRead(depth, slot);
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        ExprNode value = build(expr.value);
+
+        if (expr.cell)
+            return new ExprNode.CellWrite(expr.depth, expr.slot, value);
+        if (expr.depth == -1)
+            return new ExprNode.GlobalWrite(interpreter.globals.global(expr.name.symbol), expr.name, value);
+        if (expr.depth == 0)
+            return new ExprNode.LocalWrite(expr.slot, value);
+
+        return new ExprNode.EnclosingWrite(expr.depth, expr.slot, value);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        ExprNode left = build(expr.left);
+        ExprNode right = build(expr.right);
+
+        switch (expr.operator.type) {
+            case GREATER:
+                return new ExprNode.Greater(left, expr.operator, right);
+            case GREATER_EQUAL:
+                return new ExprNode.GreaterEqual(left, expr.operator, right);
+            case LESS:
+                return new ExprNode.Less(left, expr.operator, right);
+            case LESS_EQUAL:
+                return new ExprNode.LessEqual(left, expr.operator, right);
+            case BANG_EQUAL:
+                return new ExprNode.NotEqual(left, expr.operator, right);
+            case EQUAL_EQUAL:
+                return new ExprNode.Equal(left, expr.operator, right);
+            case MINUS:
+                return new ExprNode.Subtract(left, expr.operator, right);
+            case PLUS:
+                return new ExprNode.Add(left, expr.operator, right);
+            case SLASH:
+                return new ExprNode.Divide(left, expr.operator, right);
+            case STAR:
+                return new ExprNode.Multiply(left, expr.operator, right);
+
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + expr.operator.type);
+        }
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            ExprNode object = build(get.object);
+            return new ExprNode.Invoke(interpreter, object, get.name, expr.paren, buildArguments(expr.arguments));
+        }
+
+        if (expr.callee instanceof Expr.Super) {
+            ExprNode.Super method = (ExprNode.Super) build(expr.callee);
+            return new ExprNode.SuperInvoke(interpreter, method, expr.paren, buildArguments(expr.arguments));
+        }
+
+        ExprNode callee = build(expr.callee);
+        return new ExprNode.Call(interpreter, callee, expr.paren, buildArguments(expr.arguments));
+    }
+
+    private ExprNode[] buildArguments(List<Expr> expressions) {
+        ExprNode[] arguments = new ExprNode[expressions.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = build(expressions.get(i));
+        }
+
+        return arguments;
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        return new ExprNode.Get(build(expr.object), expr.name);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Constant(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        ExprNode left = build(expr.left);
+        ExprNode right = build(expr.right);
+
+        if (expr.operator.type == TokenType.OR)
+            return new ExprNode.Or(left, right);
+
+        return new ExprNode.And(left, right);
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        return new ExprNode.Set(build(expr.object), expr.name, build(expr.value));
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        return new ExprNode.Super(expr.depth, expr.slot, expr.thisDepth, expr.thisSlot, expr.index, expr.method);
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return read(expr.keyword, expr.depth, expr.slot, false);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        ExprNode right = build(expr.right);
+
+        if (expr.operator.type == TokenType.BANG)
+            return new ExprNode.Not(right);
+
+        return new ExprNode.Negate(expr.operator, right);
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return read(expr.name, expr.depth, expr.slot, expr.cell);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.size == 0)
+            return new StmtNode.Sequence(build(stmt.statements));
+        if (stmt.escapes)
+            return new StmtNode.Block(stmt.size, build(stmt.statements));
+
+        return new StmtNode.PooledBlock(interpreter.frames, stmt.size, build(stmt.statements));
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        ExprNode superclass = null;
+        if (stmt.superclass != null)
+            superclass = build(stmt.superclass);
+
+        FunctionRoot[] methods = new FunctionRoot[stmt.methods.size()];
+        for (int i = 0; i < methods.length; ++i) {
+            methods[i] = buildFunction(stmt.methods.get(i));
+        }
+
+        return new StmtNode.Class(interpreter, stmt, superclass, methods);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitForStmt(Stmt.For stmt) {
+        StmtNode initializer = null;
+        if (stmt.initializer != null)
+            initializer = build(stmt.initializer);
+
+        ExprNode increment = null;
+        if (stmt.increment != null)
+            increment = build(stmt.increment);
+
+        StmtNode loop = new StmtNode.For(initializer, build(stmt.condition), increment, build(stmt.body));
+        if (stmt.size == 0)
+            return loop;
+        if (stmt.escapes)
+            return new StmtNode.Block(stmt.size, new StmtNode[] { loop });
+
+        return new StmtNode.PooledBlock(interpreter.frames, stmt.size, new StmtNode[] { loop });
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return new StmtNode.Function(interpreter, buildFunction(stmt));
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        StmtNode elseBranch = null;
+        if (stmt.elseBranch != null)
+            elseBranch = build(stmt.elseBranch);
+
+        return new StmtNode.If(build(stmt.condition), build(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            return new StmtNode.TailReturn(interpreter, build(call.callee), call.paren,
+                    buildArguments(call.arguments));
+        }
+
+        ExprNode value = new ExprNode.Constant(null);
+        if (stmt.value != null)
+            value = build(stmt.value);
+
+        return new StmtNode.Return(value);
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        ExprNode initializer = new ExprNode.Constant(null);
+        if (stmt.initializer != null)
+            initializer = build(stmt.initializer);
+
+        if (stmt.slot == -1)
+            return new StmtNode.GlobalVar(interpreter.globals.global(stmt.name.symbol), initializer);
+
+        if (stmt.cell)
+            return new StmtNode.CellVar(stmt.slot, initializer);
+
+        return new StmtNode.LocalVar(stmt.slot, initializer);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(build(stmt.condition), build(stmt.body));
+    }
+}
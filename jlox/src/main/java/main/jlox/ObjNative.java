@@ -0,0 +1,21 @@
+package main.jlox;
+
+class ObjNative {
+    @FunctionalInterface
+    interface NativeFn {
+        Object call(Object[] stack, int firstArg);
+    }
+
+    final int arity;
+    final NativeFn function;
+
+    ObjNative(int arity, NativeFn function) {
+        this.arity = arity;
+        this.function = function;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,16 @@
+package main.jlox;
+
+/**
+ * A captured variable. While the variable is still live on the VM stack the
+ * upvalue is "open" and {@code location} is its stack index; once the slot goes
+ * out of scope the value is moved into {@code closed} and location becomes -1.
+ */
+class ObjUpvalue {
+    int location;
+    Object closed;
+    ObjUpvalue next;
+
+    ObjUpvalue(int location) {
+        this.location = location;
+    }
+}
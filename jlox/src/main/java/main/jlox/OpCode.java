@@ -0,0 +1,51 @@
+package main.jlox;
+
+/**
+ * Instruction set for the bytecode VM, mirroring clox's chunk.h. Operands that
+ * index the constant pool or encode jump offsets are two bytes wide; local,
+ * upvalue and argument-count operands are a single byte.
+ */
+final class OpCode {
+    static final byte OP_CONSTANT = 0;
+    static final byte OP_NIL = 1;
+    static final byte OP_TRUE = 2;
+    static final byte OP_FALSE = 3;
+    static final byte OP_POP = 4;
+    static final byte OP_GET_LOCAL = 5;
+    static final byte OP_SET_LOCAL = 6;
+    static final byte OP_GET_GLOBAL = 7;
+    static final byte OP_DEFINE_GLOBAL = 8;
+    static final byte OP_SET_GLOBAL = 9;
+    static final byte OP_GET_UPVALUE = 10;
+    static final byte OP_SET_UPVALUE = 11;
+    static final byte OP_GET_PROPERTY = 12;
+    static final byte OP_SET_PROPERTY = 13;
+    static final byte OP_GET_SUPER = 14;
+    static final byte OP_EQUAL = 15;
+    static final byte OP_GREATER = 16;
+    static final byte OP_GREATER_EQUAL = 17;
+    static final byte OP_LESS = 18;
+    static final byte OP_LESS_EQUAL = 19;
+    static final byte OP_ADD = 20;
+    static final byte OP_SUBTRACT = 21;
+    static final byte OP_MULTIPLY = 22;
+    static final byte OP_DIVIDE = 23;
+    static final byte OP_NOT = 24;
+    static final byte OP_NEGATE = 25;
+    static final byte OP_PRINT = 26;
+    static final byte OP_JUMP = 27;
+    static final byte OP_JUMP_IF_FALSE = 28;
+    static final byte OP_LOOP = 29;
+    static final byte OP_CALL = 30;
+    static final byte OP_INVOKE = 31;
+    static final byte OP_SUPER_INVOKE = 32;
+    static final byte OP_CLOSURE = 33;
+    static final byte OP_CLOSE_UPVALUE = 34;
+    static final byte OP_RETURN = 35;
+    static final byte OP_CLASS = 36;
+    static final byte OP_INHERIT = 37;
+    static final byte OP_METHOD = 38;
+
+    private OpCode() {
+    }
+}
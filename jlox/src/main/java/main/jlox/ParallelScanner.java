@@ -0,0 +1,150 @@
+package main.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Scans a large source as chunks on a {@link ForkJoinPool}, into the same
+ * {@link TokenBuffer}, with the same errors, as one {@link Scanner} would.
+ *
+ * Chunks are cut just after a newline, which no token but a string spans:
+ * a comment ends at the newline and a string does not. Whether a cut falls
+ * inside a string depends on everything before it, so a first parallel pass
+ * follows only quotes, comments and newlines through each chunk as if it
+ * started in code, counting its lines. Chaining those results tells where
+ * each chunk really starts; the rare chunk that starts inside a string is
+ * followed again from there, and merged into the one before it. The merged
+ * chunks are then scanned in parallel, each beginning on the line the
+ * counted newlines say, and their buffers joined in order.
+ */
+final class ParallelScanner {
+    // what a chunk boundary can fall in: a comment always ends first
+    private static final int CODE = 0;
+    private static final int STRING = 1;
+    private static final int COMMENT = 2;
+
+    // below this, splitting costs more than it saves
+    private static final int MIN_CHUNK = 1 << 16;
+
+    // chunks per worker, so uneven chunks still keep every worker busy
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+
+    ParallelScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    TokenBuffer scan(String source) {
+        int[] cuts = cut(source, pool.getParallelism() * CHUNKS_PER_WORKER);
+        if (cuts.length == 2)
+            return new Scanner(source).scanTokenBuffer();
+
+        List<ForkJoinTask<Long>> summaries = new ArrayList<>();
+        for (int i = 0; i + 1 < cuts.length; ++i) {
+            int from = cuts[i];
+            int to = cuts[i + 1];
+            summaries.add(pool.submit(() -> follow(source, from, to, CODE)));
+        }
+
+        // keep the cuts that fall in code, with the line each chunk begins on
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        int state = CODE;
+        int line = 1;
+        for (int i = 0; i < summaries.size(); ++i) {
+            long summary = summaries.get(i).join();
+            if (state == CODE) {
+                starts.add(cuts[i]);
+                lines.add(line);
+            } else {
+                summary = follow(source, cuts[i], cuts[i + 1], state);
+            }
+
+            state = (int) summary;
+            line += (int) (summary >>> 32);
+        }
+
+        CharSearch search = CharSearch.of(source);
+        List<Scanner> scanners = new ArrayList<>();
+        List<ForkJoinTask<TokenBuffer>> buffers = new ArrayList<>();
+        for (int i = 0; i < starts.size(); ++i) {
+            int end = i + 1 < starts.size() ? starts.get(i + 1) : source.length();
+            Scanner scanner = new Scanner(source, search, starts.get(i), end, lines.get(i));
+            scanners.add(scanner);
+            buffers.add(pool.submit(scanner::scanChunk));
+        }
+
+        List<TokenBuffer> scanned = new ArrayList<>();
+        for (int i = 0; i < buffers.size(); ++i) {
+            scanned.add(buffers.get(i).join());
+            scanners.get(i).reportErrors();
+        }
+
+        return TokenBuffer.join(source, scanned, line);
+    }
+
+    /**
+     * Cuts {@code source} into about {@code count} pieces just after a
+     * newline, returning the offsets from 0 to the length of the source.
+     */
+    private static int[] cut(String source, int count) {
+        count = Math.min(count, source.length() / MIN_CHUNK);
+
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        for (int i = 1; i < count; ++i) {
+            int newline = source.indexOf('\n', (int) ((long) source.length() * i / count));
+            if (newline == -1)
+                break;
+            if (newline + 1 > cuts.get(cuts.size() - 1) && newline + 1 < source.length())
+                cuts.add(newline + 1);
+        }
+        cuts.add(source.length());
+
+        int[] offsets = new int[cuts.size()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = cuts.get(i);
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Follows {@code source[from, to)} from {@code state} just closely enough
+     * to tell code, strings and comments apart. Returns the number of
+     * newlines in the high half and the state it ends in in the low half.
+     */
+    private static long follow(String source, int from, int to, int state) {
+        long newlines = 0;
+        for (int i = from; i < to; ++i) {
+            char c = source.charAt(i);
+            if (c == '\n')
+                ++newlines;
+
+            switch (state) {
+                case CODE:
+                    if (c == '"') {
+                        state = STRING;
+                    } else if (c == '/' && i + 1 < to && source.charAt(i + 1) == '/') {
+                        state = COMMENT;
+                        ++i;
+                    }
+                    break;
+                case STRING:
+                    if (c == '"')
+                        state = CODE;
+                    break;
+                default:
+                    if (c == '\n')
+                        state = CODE;
+                    break;
+            }
+        }
+
+        // a chunk ends with a newline, so it cannot end in a comment
+        return newlines << 32 | (state == COMMENT ? CODE : state);
+    }
+}
@@ -2,7 +2,6 @@ package main.jlox;
 
 import java.io.Serial;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -18,10 +17,51 @@ public class Parser {
         }
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    /**
+     * Reads a list of tokens as scanned by {@link Scanner#scanTokens}.
+     */
+    private static final class ListCursor implements TokenCursor {
+        private final List<Token> tokens;
+        private int current = 0;
+
+        ListCursor(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return peek().type;
+        }
+
+        @Override
+        public Token peek() {
+            return tokens.get(current);
+        }
+
+        @Override
+        public TokenType previousType() {
+            return previous().type;
+        }
+
+        @Override
+        public Token previous() {
+            return tokens.get(current - 1);
+        }
+
+        @Override
+        public void advance() {
+            if (peek().type != TokenType.EOF)
+                current++;
+        }
+    }
+
+    private final TokenCursor tokens;
 
     public Parser(List<Token> tokens) {
+        this.tokens = new ListCursor(tokens);
+    }
+
+    Parser(TokenCursor tokens) {
         this.tokens = tokens;
     }
 
@@ -57,25 +97,25 @@ public class Parser {
 
         Expr.Variable superclass = null;
         if (match(TokenType.LESS)) {
-            consume(TokenType.IDENTIFIER, "Expect superclass name.");
+            expect(TokenType.IDENTIFIER, "Expect superclass name.");
             superclass = new Expr.Variable(previous());
         }
 
-        consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
+        expect(TokenType.LEFT_BRACE, "Expect '{' before class body.");
 
         List<Stmt.Function> methods = new ArrayList<>();
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
             methods.add(function("method"));
         }
 
-        consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
+        expect(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
 
         return new Stmt.Class(name, superclass, methods);
     }
 
     private Stmt.Function function(String kind) {
         Token name = consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
-        consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
 
         List<Token> parameters = new ArrayList<>();
         if (!check(TokenType.RIGHT_PAREN)) {
@@ -88,9 +128,9 @@ public class Parser {
             } while (match(TokenType.COMMA));
         }
 
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
 
-        consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        expect(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
         List<Stmt> body = block();
 
         return new Stmt.Function(name, parameters, body);
@@ -104,7 +144,7 @@ public class Parser {
             initializer = expression();
         }
 
-        consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
+        expect(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
         return new Stmt.Var(name, initializer);
     }
 
@@ -131,7 +171,7 @@ public class Parser {
     }
 
     private Stmt forStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
         if (match(TokenType.SEMICOLON)) {
@@ -146,43 +186,26 @@ public class Parser {
         if (!check(TokenType.SEMICOLON)) {
             condition = expression();
         }
-        consume(TokenType.SEMICOLON, "Expect ';' after loop condition.");
+        expect(TokenType.SEMICOLON, "Expect ';' after loop condition.");
 
         Expr increment = null;
         if (!check(TokenType.RIGHT_PAREN)) {
             increment = expression();
         }
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
 
         Stmt body = statement();
-        if (increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body,
-                            new Stmt.Expression(increment)));
-        }
 
         if (condition == null)
             condition = new Expr.Literal(true);
 
-        body = new Stmt.While(
-                condition,
-                body);
-
-        if (initializer != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            initializer,
-                            body));
-        }
-
-        return body;
+        return new Stmt.For(initializer, condition, increment, body);
     }
 
     private Stmt ifStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
         Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after if condition.");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after if condition.");
 
         Stmt thenBranch = statement();
         Stmt elseBranch = null;
@@ -195,7 +218,7 @@ public class Parser {
 
     private Stmt printStatement() {
         Expr value = expression();
-        consume(TokenType.SEMICOLON, "Expect ';' after value.");
+        expect(TokenType.SEMICOLON, "Expect ';' after value.");
         return new Stmt.Print(value);
     }
 
@@ -207,14 +230,14 @@ public class Parser {
             value = expression();
         }
 
-        consume(TokenType.SEMICOLON, "Expect ';' after return value.");
+        expect(TokenType.SEMICOLON, "Expect ';' after return value.");
         return new Stmt.Return(keyword, value);
     }
 
     private Stmt whileStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after while condition.");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after while condition.");
         Stmt body = statement();
 
         return new Stmt.While(condition, body);
@@ -227,13 +250,13 @@ public class Parser {
             statements.add(declaration());
         }
 
-        consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+        expect(TokenType.RIGHT_BRACE, "Expect '}' after block.");
         return statements;
     }
 
     private Stmt expressionStatement() {
         Expr value = expression();
-        consume(TokenType.SEMICOLON, "Expect ';' after expression.");
+        expect(TokenType.SEMICOLON, "Expect ';' after expression.");
         return new Stmt.Expression(value);
     }
 
@@ -349,7 +372,7 @@ public class Parser {
 
         if (match(TokenType.SUPER)) {
             Token keyword = previous();
-            consume(TokenType.DOT, "Expect '.' after 'super'.");
+            expect(TokenType.DOT, "Expect '.' after 'super'.");
             Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
 
             return new Expr.Super(keyword, method);
@@ -364,7 +387,7 @@ public class Parser {
 
         if (match(TokenType.LEFT_PAREN)) {
             Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+            expect(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
             return new Expr.Grouping(expr);
         }
 
@@ -378,19 +401,30 @@ public class Parser {
         throw error(peek(), message);
     }
 
+    /**
+     * Like {@link #consume} for tokens the syntax tree does not keep, which
+     * then never need to exist as objects.
+     */
+    private void expect(TokenType type, String message) {
+        if (!check(type))
+            throw error(peek(), message);
+
+        tokens.advance();
+    }
+
     private ParseError error(Token token, String message) {
         Lox.error(token, message);
         return new ParseError();
     }
 
     private void synchronize() {
-        advance();
+        tokens.advance();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON)
+            if (tokens.previousType() == TokenType.SEMICOLON)
                 return;
 
-            switch (peek().type) {
+            switch (tokens.peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -404,7 +438,7 @@ public class Parser {
                 default:
                     break;
             }
-            advance();
+            tokens.advance();
         }
     }
 
@@ -432,7 +466,7 @@ public class Parser {
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
-                advance();
+                tokens.advance();
                 return true;
             }
         }
@@ -443,26 +477,24 @@ public class Parser {
         if (isAtEnd())
             return false;
 
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
     private Token advance() {
-        if (!isAtEnd())
-            current++;
-
+        tokens.advance();
         return previous();
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.peekType() == TokenType.EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     @FunctionalInterface
@@ -1,20 +1,112 @@
 package main.jlox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
-    private FunctionType currentFunction = FunctionType.NONE;
-    private ClassType currentClass = ClassType.NONE;
+    private static class Local {
+        final int slot;
+        boolean defined;
+
+        // set while the declaring function or class statement is resolved
+        boolean initializing = false;
+        boolean captured = false;
+        boolean capturedEarly = false;
+        boolean assigned = false;
+
+        // nodes that must go through a cell if this local ends up needing one
+        final List<Object> uses = new ArrayList<>();
+
+        Local(int slot, boolean defined) {
+            this.slot = slot;
+            this.defined = defined;
+        }
+
+        /**
+         * Closures copy captured values, which is only safe if the value can no
+         * longer change: otherwise the local lives in a shared {@link Cell}.
+         */
+        boolean needsCell() {
+            return captured && (assigned || capturedEarly);
+        }
+    }
+
+    /**
+     * An environment that exists at runtime. Functions, top-level blocks and
+     * loops, and the scope binding 'super' get one of their own; any other
+     * scope is flattened into the frame it is nested in and takes slots from
+     * it, which are free again once the scope ends.
+     */
+    private static class Frame {
+        // environments from the outermost frame of the same function
+        final int depth;
+        int next = 0;
+        int size = 0;
+
+        Frame(int depth) {
+            this.depth = depth;
+        }
+
+        int allocate() {
+            int slot = next++;
+            if (next > size)
+                size = next;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+            return slot;
+        }
+    }
+
+    private static class Scope {
+        final Map<Symbol, Local> locals = new HashMap<>();
+        final Frame frame;
+        final int firstSlot;
+
+        Scope(Frame frame) {
+            this.frame = frame;
+            this.firstSlot = frame.next;
+        }
     }
 
+    /**
+     * A function being resolved. Its own scopes start at {@code base}; any
+     * local found below that is copied into the function's closure when the
+     * function is created, at the index recorded in {@code captures}.
+     */
+    private static class FunctionScope {
+        final FunctionScope enclosing;
+        final int base;
+        final Map<Symbol, Integer> captures = new HashMap<>();
+        final List<Integer> captureDepths = new ArrayList<>();
+        final List<Integer> captureSlots = new ArrayList<>();
+
+        // blocks of this function start at blockBase in the block stack
+        final int blockBase;
+        boolean escapes = false;
+
+        FunctionScope(FunctionScope enclosing, int base, int blockBase) {
+            this.enclosing = enclosing;
+            this.base = base;
+            this.blockBase = blockBase;
+        }
+    }
+
+    private final Stack<Scope> scopes = new Stack<>();
+    // blocks and loops whose scope is open, innermost last
+    private final Stack<Stmt> blocks = new Stack<>();
+
+    // top-level code acts as a function that can never capture anything
+    private FunctionScope currentScope = new FunctionScope(null, 0, 0);
+
+    // where the last call to resolveLocal found the name
+    private int resolvedDepth;
+    private int resolvedSlot;
+    private FunctionType currentFunction = FunctionType.NONE;
+    private ClassType currentClass = ClassType.NONE;
+    private Stmt.Class currentClassDeclaration = null;
+
     public void resolve(List<Stmt> statements) {
         for (Stmt statement : statements) {
             resolve(statement);
@@ -32,7 +124,15 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+
+        Local local = resolveLocal(expr.name.symbol);
+        if (local != null) {
+            expr.depth = resolvedDepth;
+            expr.slot = resolvedSlot;
+            local.assigned = true;
+            local.uses.add(expr);
+        }
+
         return null;
     }
 
@@ -93,7 +193,24 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
 
-        resolveLocal(expr, expr.keyword);
+        if (resolveLocal(Symbol.SUPER) != null) {
+            expr.depth = resolvedDepth;
+            expr.slot = resolvedSlot;
+
+            // the class resolves each method named after 'super.' once, when it is created
+            List<Symbol> names = currentClassDeclaration.superMethods;
+            expr.index = names.indexOf(expr.method.symbol);
+            if (expr.index == -1) {
+                expr.index = names.size();
+                names.add(expr.method.symbol);
+            }
+        }
+
+        if (resolveLocal(Symbol.THIS) != null) {
+            expr.thisDepth = resolvedDepth;
+            expr.thisSlot = resolvedSlot;
+        }
+
         return null;
     }
 
@@ -102,7 +219,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (currentClass == ClassType.NONE) {
             Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
         }
-        resolveLocal(expr, expr.keyword);
+
+        if (resolveLocal(Symbol.THIS) != null) {
+            expr.depth = resolvedDepth;
+            expr.slot = resolvedSlot;
+        }
+
         return null;
     }
 
@@ -114,18 +236,43 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && Boolean.FALSE.equals(scopes.peek().get(expr.name.lexeme))) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        if (!scopes.isEmpty()) {
+            Local local = scopes.peek().locals.get(expr.name.symbol);
+            if (local != null && !local.defined) {
+                Lox.error(expr.name, "Can't read local variable in its own initializer.");
+            }
+        }
+
+        Local local = resolveLocal(expr.name.symbol);
+        if (local != null) {
+            expr.depth = resolvedDepth;
+            expr.slot = resolvedSlot;
+            local.uses.add(expr);
         }
 
-        resolveLocal(expr, expr.name);
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        // without declarations a scope would be empty, so the block runs in
+        // the enclosing environment
+        if (!declaresVariables(stmt.statements)) {
+            resolve(stmt.statements);
+            return null;
+        }
+
+        // only a block outside any function needs an environment of its own
+        boolean root = scopes.isEmpty();
         beginScope();
+        blocks.push(stmt);
+        stmt.escapes = false;
+
         resolve(stmt.statements);
+        if (root)
+            stmt.size = scopes.peek().frame.size;
+
+        blocks.pop();
         endScope();
 
         return null;
@@ -134,12 +281,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = currentClass;
+        Stmt.Class enclosingClassDeclaration = currentClassDeclaration;
         currentClass = ClassType.CLASS;
+        currentClassDeclaration = stmt;
+        stmt.superMethods = new ArrayList<>();
 
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
+        Local local = declared(stmt.name, stmt);
+        escape();
 
-        if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+        if (stmt.superclass != null && stmt.name.symbol == stmt.superclass.name.symbol) {
             Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
         }
 
@@ -149,29 +301,33 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
 
         if (stmt.superclass != null) {
-            beginScope();
-            scopes.peek().put("super", true);
+            // its own environment, which the methods' closures are built from
+            beginFrame();
+            scopes.peek().locals.put(Symbol.SUPER, new Local(scopes.peek().frame.allocate(), true));
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
+        // methods referring to the class capture it before it exists
+        if (local != null)
+            local.initializing = true;
 
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme.equals("init")) {
+            if (method.name.symbol == Symbol.INIT) {
                 declaration = FunctionType.INITIALIZER;
             }
 
             resolveFunction(method, declaration);
         }
 
-        endScope();
-
         if (stmt.superclass != null) {
             endScope();
         }
 
+        if (local != null)
+            local.initializing = false;
+
         currentClass = enclosingClass;
+        currentClassDeclaration = enclosingClassDeclaration;
 
         return null;
     }
@@ -182,12 +338,50 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // only a variable declared by the initializer needs a loop scope
+        boolean scoped = stmt.initializer instanceof Stmt.Var;
+        boolean root = scopes.isEmpty();
+        if (scoped) {
+            beginScope();
+            blocks.push(stmt);
+            stmt.escapes = false;
+        }
+
+        if (stmt.initializer != null)
+            resolve(stmt.initializer);
+        resolve(stmt.condition);
+        if (stmt.increment != null)
+            resolve(stmt.increment);
+        resolve(stmt.body);
+
+        if (scoped) {
+            if (root)
+                stmt.size = scopes.peek().frame.size;
+            blocks.pop();
+            endScope();
+        }
+
+        return null;
+    }
+
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
+        Local local = declared(stmt.name, stmt);
+        escape();
+
+        // a function referring to itself captures itself before it exists
+        if (local != null)
+            local.initializing = true;
 
         resolveFunction(stmt, FunctionType.FUNCTION);
+
+        if (local != null)
+            local.initializing = false;
+
         return null;
     }
 
@@ -219,6 +413,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                 Lox.error(stmt.keyword, "Can't return a value from an initializer.");
             }
             resolve(stmt.value);
+
+            // the activation has nothing left to do after a call returned directly
+            stmt.tail = stmt.value instanceof Expr.Call;
         }
 
         return null;
@@ -226,11 +423,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
         define(stmt.name);
+        declared(stmt.name, stmt);
         return null;
     }
 
@@ -241,47 +439,200 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Opens a scope whose locals take slots of the enclosing frame, or of a
+     * new frame at top level.
+     */
     private void beginScope() {
-        scopes.push(new HashMap<>());
+        if (scopes.isEmpty()) {
+            beginFrame();
+        } else {
+            scopes.push(new Scope(scopes.peek().frame));
+        }
+    }
+
+    private void beginFrame() {
+        int depth = scopes.isEmpty() ? 0 : scopes.peek().frame.depth + 1;
+        scopes.push(new Scope(new Frame(depth)));
     }
 
     private void endScope() {
-        scopes.pop();
+        Scope scope = scopes.pop();
+        scope.frame.next = scope.firstSlot;
+
+        for (Local local : scope.locals.values()) {
+            if (!local.needsCell())
+                continue;
+
+            for (Object use : local.uses) {
+                if (use instanceof Expr.Variable) {
+                    ((Expr.Variable) use).cell = true;
+                } else if (use instanceof Expr.Assign) {
+                    ((Expr.Assign) use).cell = true;
+                } else if (use instanceof Stmt.Var) {
+                    ((Stmt.Var) use).cell = true;
+                } else if (use instanceof Stmt.Function) {
+                    ((Stmt.Function) use).cell = true;
+                } else if (use instanceof Stmt.Class) {
+                    ((Stmt.Class) use).cell = true;
+                }
+            }
+        }
     }
 
-    private void declare(Token name) {
+    /**
+     * Declares {@code name} in the innermost scope and returns the slot it will
+     * occupy in that scope's frame, or -1 for a global.
+     */
+    private int declare(Token name) {
         if (scopes.isEmpty())
-            return;
+            return -1;
 
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
+        Scope scope = scopes.peek();
+        Local existing = scope.locals.get(name.symbol);
+        if (existing != null) {
             Lox.error(name, "Already a variable with this name in this scope.");
+            existing.defined = false;
+            return existing.slot;
         }
 
-        scope.put(name.lexeme, false);
+        int slot = scope.frame.allocate();
+        scope.locals.put(name.symbol, new Local(slot, false));
+        return slot;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty())
             return;
 
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().locals.get(name.symbol).defined = true;
+    }
+
+    /**
+     * Marks the current function's frame and every block open in it as
+     * escaping: a closure is created there, so the environments must not be
+     * reused once the activation ends. Closures copy what they capture today,
+     * but only activations that create none are handed to the frame stack.
+     */
+    private void escape() {
+        currentScope.escapes = true;
+        for (int i = currentScope.blockBase; i < blocks.size(); ++i) {
+            Stmt block = blocks.get(i);
+            if (block instanceof Stmt.Block) {
+                ((Stmt.Block) block).escapes = true;
+            } else if (block instanceof Stmt.For) {
+                ((Stmt.For) block).escapes = true;
+            }
+        }
+    }
+
+    private static boolean declaresVariables(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var || statement instanceof Stmt.Function
+                    || statement instanceof Stmt.Class)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records {@code declaration} as the statement creating local
+     * {@code name}, and returns the local, or null for a global.
+     */
+    private Local declared(Token name, Stmt declaration) {
+        if (scopes.isEmpty())
+            return null;
+
+        Local local = scopes.peek().locals.get(name.symbol);
+        local.uses.add(declaration);
+        return local;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; --i) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+    /**
+     * Finds the local {@code name} refers to from the innermost scope, or
+     * returns null if it is a global. Leaves the number of environments to walk
+     * and the slot to read in {@link #resolvedDepth} and {@link #resolvedSlot}.
+     * A local of an enclosing function is reached through the current
+     * function's closure, one environment past its own frames.
+     */
+    private Local resolveLocal(Symbol name) {
+        if (scopes.isEmpty())
+            return null;
+
+        Frame frame = scopes.peek().frame;
+        for (int i = scopes.size() - 1; i >= currentScope.base; --i) {
+            Local local = scopes.get(i).locals.get(name);
+            if (local != null) {
+                resolvedDepth = frame.depth - scopes.get(i).frame.depth;
+                resolvedSlot = local.slot;
+                return local;
             }
         }
+
+        for (int i = currentScope.base - 1; i >= 0; --i) {
+            Local local = scopes.get(i).locals.get(name);
+            if (local != null) {
+                resolvedDepth = frame.depth - scopes.get(currentScope.base).frame.depth + 1;
+                resolvedSlot = capture(currentScope, name);
+                return local;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the index of {@code name} in {@code function}'s closure, adding
+     * it if needed. The value is copied from the scopes of the enclosing
+     * function visible where {@code function} is declared, or from the
+     * enclosing function's own closure.
+     */
+    private int capture(FunctionScope function, Symbol name) {
+        Integer index = function.captures.get(name);
+        if (index != null)
+            return index;
+
+        FunctionScope enclosing = function.enclosing;
+        Frame frame = scopes.get(function.base - 1).frame;
+        int depth = -1;
+        int slot = -1;
+        for (int i = function.base - 1; i >= enclosing.base; --i) {
+            Local local = scopes.get(i).locals.get(name);
+            if (local != null) {
+                depth = frame.depth - scopes.get(i).frame.depth;
+                slot = local.slot;
+
+                local.captured = true;
+                if (local.initializing)
+                    local.capturedEarly = true;
+                break;
+            }
+        }
+
+        if (slot == -1) {
+            depth = frame.depth - scopes.get(enclosing.base).frame.depth + 1;
+            slot = capture(enclosing, name);
+        }
+
+        index = function.captureDepths.size();
+        function.captures.put(name, index);
+        function.captureDepths.add(depth);
+        function.captureSlots.add(slot);
+        return index;
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
 
-        beginScope();
+        beginFrame();
+        currentScope = new FunctionScope(currentScope, scopes.size() - 1, blocks.size());
+
+        // methods receive their instance in the first slot of the frame
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            scopes.peek().locals.put(Symbol.THIS, new Local(scopes.peek().frame.allocate(), true));
+        }
 
         for (Token param : function.params) {
             declare(param);
@@ -289,8 +640,34 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
 
         resolve(function.body);
+        // blocks of the body are flattened into the same frame
+        function.frameSize = scopes.peek().frame.size;
+
+        // parameters arrive as plain values and are boxed on entry if needed
+        List<Integer> cellParams = new ArrayList<>();
+        for (Token param : function.params) {
+            Local local = scopes.peek().locals.get(param.symbol);
+            if (local.needsCell() && !cellParams.contains(local.slot))
+                cellParams.add(local.slot);
+        }
+        function.cellParams = toArray(cellParams);
+
+        function.captureDepths = toArray(currentScope.captureDepths);
+        function.captureSlots = toArray(currentScope.captureSlots);
+        function.escapes = currentScope.escapes;
+
         endScope();
+        currentScope = currentScope.enclosing;
 
         currentFunction = enclosingFunction;
     }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
 }
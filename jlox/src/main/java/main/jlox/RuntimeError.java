@@ -7,9 +7,17 @@ public class RuntimeError extends RuntimeException {
     private static final long serialVersionUID = 1L;
 
     final Token token;
+    final int line;
 
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
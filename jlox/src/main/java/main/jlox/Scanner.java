@@ -1,41 +1,42 @@
 package main.jlox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Scanner {
     private final String source;
     private final List<Token> tokens = new ArrayList<>();
+    private final CharSearch search;
+    private final int end;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    private static final Map<String, TokenType> RESERVED_KEYWORDS_MAP;
-
-    static {
-        RESERVED_KEYWORDS_MAP = new HashMap<>();
-        RESERVED_KEYWORDS_MAP.put("and", TokenType.AND);
-        RESERVED_KEYWORDS_MAP.put("class", TokenType.CLASS);
-        RESERVED_KEYWORDS_MAP.put("else", TokenType.ELSE);
-        RESERVED_KEYWORDS_MAP.put("false", TokenType.FALSE);
-        RESERVED_KEYWORDS_MAP.put("for", TokenType.FOR);
-        RESERVED_KEYWORDS_MAP.put("fun", TokenType.FUN);
-        RESERVED_KEYWORDS_MAP.put("if", TokenType.IF);
-        RESERVED_KEYWORDS_MAP.put("nil", TokenType.NIL);
-        RESERVED_KEYWORDS_MAP.put("or", TokenType.OR);
-        RESERVED_KEYWORDS_MAP.put("print", TokenType.PRINT);
-        RESERVED_KEYWORDS_MAP.put("return", TokenType.RETURN);
-        RESERVED_KEYWORDS_MAP.put("super", TokenType.SUPER);
-        RESERVED_KEYWORDS_MAP.put("this", TokenType.THIS);
-        RESERVED_KEYWORDS_MAP.put("true", TokenType.TRUE);
-        RESERVED_KEYWORDS_MAP.put("var", TokenType.VAR);
-        RESERVED_KEYWORDS_MAP.put("while", TokenType.WHILE);
-    }
+    // set when scanning into packed arrays instead of the token list
+    private TokenSink buffer = null;
+
+    // set while scanning a chunk, whose errors are reported once all are done
+    private List<Integer> errorLines = null;
+    private List<String> errorMessages = null;
 
     public Scanner(String source) {
         this.source = source;
+        this.search = CharSearch.of(source);
+        this.end = source.length();
+    }
+
+    /**
+     * A scanner for the part of {@code source} from {@code start} up to
+     * {@code end}, which begins on {@code line}. It has to begin and end
+     * between tokens. Scanners of one source can share its {@code search}.
+     */
+    Scanner(String source, CharSearch search, int start, int end, int line) {
+        this.source = source;
+        this.search = search;
+        this.start = start;
+        this.current = start;
+        this.end = end;
+        this.line = line;
     }
 
     public List<Token> scanTokens() {
@@ -48,6 +49,71 @@ public class Scanner {
         return tokens;
     }
 
+    /**
+     * Scans into a {@link TokenBuffer}, which keeps no objects per token, for
+     * the parser to read through {@link TokenBuffer#cursor}.
+     */
+    TokenBuffer scanTokenBuffer() {
+        TokenBuffer tokens = new TokenBuffer(source);
+        buffer = tokens;
+        while (!isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        buffer.add(TokenType.EOF, current, 0, line);
+        return tokens;
+    }
+
+    /**
+     * Scans this scanner's part of the source into a buffer of its own,
+     * without an EOF, holding back errors until {@link #reportErrors}, so
+     * chunks of one source can be scanned at the same time and their tokens
+     * and errors still come out in order.
+     */
+    TokenBuffer scanChunk() {
+        TokenBuffer tokens = new TokenBuffer(source, end - current);
+        buffer = tokens;
+        errorLines = new ArrayList<>();
+        errorMessages = new ArrayList<>();
+        while (!isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        return tokens;
+    }
+
+    void reportErrors() {
+        for (int i = 0; i < errorLines.size(); ++i) {
+            Lox.error(errorLines.get(i), errorMessages.get(i));
+        }
+    }
+
+    /**
+     * Returns a {@link TokenStream} that scans as the parser reads, so tokens
+     * are only held while the parser can still look at them.
+     */
+    TokenStream scanTokenStream() {
+        TokenStream tokens = new TokenStream(this, source);
+        buffer = tokens;
+        return tokens;
+    }
+
+    /**
+     * Scans the next lexeme into the stream, which may add no token for
+     * whitespace or a comment. At the end of the source it adds EOF.
+     */
+    void scanNext() {
+        if (isAtEnd()) {
+            buffer.add(TokenType.EOF, current, 0, line);
+            return;
+        }
+
+        start = current;
+        scanToken();
+    }
+
     private void scanToken() {
         char c = advance();
         switch (c) {
@@ -95,8 +161,7 @@ public class Scanner {
                 break;
             case '/':
                 if (match('/')) {
-                    while (peek() != '\n' && !isAtEnd())
-                        advance();
+                    current = search.find('\n', current, end);
                 } else {
                     addToken(TokenType.SLASH);
                 }
@@ -104,7 +169,8 @@ public class Scanner {
             case ' ':
             case '\r':
             case '\t':
-                // ignore whitespace
+                // ignore whitespace, the whole run at once
+                current = search.skipBlanks(current, end);
                 break;
             case '\n':
                 // increment line count, then ignore
@@ -119,30 +185,26 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    error("Unexpected character.");
                 }
                 break;
         }
     }
 
     private void string() {
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n')
-                line++;
-            advance();
-        }
+        int close = search.find('"', current, end);
+        line += search.count('\n', current, close);
+        current = close;
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            error("Unterminated string.");
             return;
         }
 
         // the closing '"'.
         advance();
 
-        // trim surrounding quotes
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING);
     }
 
     private void number() {
@@ -159,25 +221,106 @@ public class Scanner {
                 advance();
         }
 
-        addToken(TokenType.NUMBER,
-                Double.parseDouble(source.substring(start, current)));
+        addToken(TokenType.NUMBER);
     }
 
     private void identifier() {
         while (isAlphaNumeric(peek()))
             advance();
 
-        String text = source.substring(start, current);
-        TokenType type = RESERVED_KEYWORDS_MAP.get(text);
-        if (type == null) {
-            type = TokenType.IDENTIFIER;
+        TokenType type = identifierType();
+        if (type != TokenType.IDENTIFIER) {
+            addToken(type);
+            return;
         }
 
-        addToken(type);
+        Symbol symbol = Symbol.intern(source, start, current);
+        if (buffer != null) {
+            buffer.addIdentifier(symbol, start, line);
+        } else {
+            tokens.add(new Token(type, symbol.name, null, line, symbol));
+        }
+    }
+
+    /**
+     * Tells keywords from identifiers by matching the characters in place,
+     * without cutting the lexeme out of the source first.
+     */
+    private TokenType identifierType() {
+        switch (source.charAt(start)) {
+            case 'a':
+                return checkKeyword(1, "nd", TokenType.AND);
+            case 'c':
+                return checkKeyword(1, "lass", TokenType.CLASS);
+            case 'e':
+                return checkKeyword(1, "lse", TokenType.ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a':
+                            return checkKeyword(2, "lse", TokenType.FALSE);
+                        case 'o':
+                            return checkKeyword(2, "r", TokenType.FOR);
+                        case 'u':
+                            return checkKeyword(2, "n", TokenType.FUN);
+                        default:
+                            break;
+                    }
+                }
+                break;
+            case 'i':
+                return checkKeyword(1, "f", TokenType.IF);
+            case 'n':
+                return checkKeyword(1, "il", TokenType.NIL);
+            case 'o':
+                return checkKeyword(1, "r", TokenType.OR);
+            case 'p':
+                return checkKeyword(1, "rint", TokenType.PRINT);
+            case 'r':
+                return checkKeyword(1, "eturn", TokenType.RETURN);
+            case 's':
+                return checkKeyword(1, "uper", TokenType.SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h':
+                            return checkKeyword(2, "is", TokenType.THIS);
+                        case 'r':
+                            return checkKeyword(2, "ue", TokenType.TRUE);
+                        default:
+                            break;
+                    }
+                }
+                break;
+            case 'v':
+                return checkKeyword(1, "ar", TokenType.VAR);
+            case 'w':
+                return checkKeyword(1, "hile", TokenType.WHILE);
+            default:
+                break;
+        }
+
+        return TokenType.IDENTIFIER;
+    }
+
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start == offset + rest.length() && source.startsWith(rest, start + offset))
+            return type;
+
+        return TokenType.IDENTIFIER;
+    }
+
+    private void error(String message) {
+        if (errorLines != null) {
+            errorLines.add(line);
+            errorMessages.add(message);
+        } else {
+            Lox.error(line, message);
+        }
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     private char advance() {
@@ -185,12 +328,29 @@ public class Scanner {
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line);
+            return;
+        }
 
-    private void addToken(TokenType type, Object literal) {
         String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(new Token(type, text, literal(source, type, start, current), line));
+    }
+
+    /**
+     * The value of the string or number literal between {@code start} and
+     * {@code end}, or null for any other token.
+     */
+    static Object literal(String source, TokenType type, int start, int end) {
+        switch (type) {
+            case STRING:
+                // trim surrounding quotes
+                return source.substring(start + 1, end - 1);
+            case NUMBER:
+                return Double.parseDouble(source.substring(start, end));
+            default:
+                return null;
+        }
     }
 
     private boolean match(char expected) {
@@ -211,7 +371,7 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length())
+        if (current + 1 >= end)
             return '\0';
         return source.charAt(current + 1);
     }
@@ -0,0 +1,52 @@
+package main.jlox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The layout of a {@link LoxInstance}: which slot of the instance's value
+ * array holds each field. Shapes are immutable and form a tree rooted at each
+ * class's empty shape; adding a field follows (or creates) a transition to the
+ * child shape, so instances that gain the same fields in the same order end up
+ * sharing one shape.
+ */
+final class Shape {
+    final LoxClass klass;
+    final int size;
+    private final Map<Symbol, Integer> slots;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+
+    Shape(LoxClass klass) {
+        this(klass, new HashMap<>());
+    }
+
+    private Shape(LoxClass klass, Map<Symbol, Integer> slots) {
+        this.klass = klass;
+        this.size = slots.size();
+        this.slots = slots;
+    }
+
+    /**
+     * Returns the slot holding {@code name}, or -1 if this layout has no such
+     * field.
+     */
+    int slotOf(Symbol name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the shape with {@code name} added in the next free slot.
+     */
+    Shape withField(Symbol name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            Map<Symbol, Integer> nextSlots = new HashMap<>(slots);
+            nextSlots.put(name, size);
+            next = new Shape(klass, nextSlots);
+            transitions.put(name, next);
+        }
+
+        return next;
+    }
+}
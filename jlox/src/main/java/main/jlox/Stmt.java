@@ -7,6 +7,7 @@ abstract class Stmt {
         R visitBlockStmt(Block stmt);
         R visitClassStmt(Class stmt);
         R visitExpressionStmt(Expression stmt);
+        R visitForStmt(For stmt);
         R visitFunctionStmt(Function stmt);
         R visitIfStmt(If stmt);
         R visitPrintStmt(Print stmt);
@@ -26,6 +27,8 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+        int size = 0;
+        boolean escapes = true;
     }
 
     static class Class extends Stmt {
@@ -43,6 +46,9 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+        int slot = -1;
+        boolean cell = false;
+        List<Symbol> superMethods = null;
     }
 
     static class Expression extends Stmt {
@@ -58,6 +64,29 @@ abstract class Stmt {
         final Expr expression;
     }
 
+    static class For extends Stmt {
+        For(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForStmt(this);
+        }
+
+        final Stmt initializer;
+        final Expr condition;
+        final Expr increment;
+        final Stmt body;
+        int size = 0;
+        boolean escapes = true;
+        int backEdges = 0;
+        ClosureCompiler.Action tiered = null;
+    }
+
     static class Function extends Stmt {
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -73,6 +102,16 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = -1;
+        int frameSize = 0;
+        boolean cell = false;
+        int[] captureDepths = null;
+        int[] captureSlots = null;
+        int[] cellParams = null;
+        boolean escapes = true;
+        int calls = 0;
+        FunctionBody tiered = null;
+        int deoptimizations = 0;
     }
 
     static class If extends Stmt {
@@ -118,6 +157,7 @@ abstract class Stmt {
 
         final Token keyword;
         final Expr value;
+        boolean tail = false;
     }
 
     static class Var extends Stmt {
@@ -133,6 +173,9 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        int slot = -1;
+        boolean cell = false;
+        GlobalEnvironment.Global global = null;
     }
 
     static class While extends Stmt {
@@ -148,6 +191,8 @@ abstract class Stmt {
 
         final Expr condition;
         final Stmt body;
+        int backEdges = 0;
+        ClosureCompiler.Action tiered = null;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,383 @@
+package main.jlox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Executable statement nodes. Statements do not specialize themselves but
+ * adopt their expressions so those can.
+ */
+abstract class StmtNode extends Node {
+    abstract void execute(Environment frame);
+
+    static void executeAll(StmtNode[] statements, Environment frame) {
+        for (StmtNode statement : statements) {
+            statement.execute(frame);
+        }
+    }
+
+    /**
+     * Base of statements holding a single expression.
+     */
+    abstract static class ExprStmtNode extends StmtNode {
+        ExprNode expression;
+
+        ExprStmtNode(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (expression == oldChild)
+                expression = (ExprNode) newChild;
+        }
+    }
+
+    static class Block extends StmtNode {
+        private final int size;
+        private final StmtNode[] statements;
+
+        Block(int size, StmtNode[] statements) {
+            this.size = size;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        void execute(Environment frame) {
+            executeAll(statements, new Environment(frame, size));
+        }
+    }
+
+    /**
+     * A block that never lets its environment escape, so the environment
+     * comes from the frame stack.
+     */
+    static class PooledBlock extends StmtNode {
+        private final FrameStack frames;
+        private final int size;
+        private final StmtNode[] statements;
+
+        PooledBlock(FrameStack frames, int size, StmtNode[] statements) {
+            this.frames = frames;
+            this.size = size;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        void execute(Environment frame) {
+            try {
+                executeAll(statements, frames.push(frame, size));
+            } finally {
+                frames.pop(size);
+            }
+        }
+    }
+
+    /**
+     * A block without declarations, which runs in the enclosing environment.
+     */
+    static class Sequence extends StmtNode {
+        private final StmtNode[] statements;
+
+        Sequence(StmtNode[] statements) {
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        void execute(Environment frame) {
+            executeAll(statements, frame);
+        }
+    }
+
+    static class Expression extends ExprStmtNode {
+        Expression(ExprNode expression) {
+            super(expression);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            expression.execute(frame);
+        }
+    }
+
+    static class Print extends ExprStmtNode {
+        Print(ExprNode expression) {
+            super(expression);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            System.out.println(Interpreter.stringify(expression.execute(frame)));
+        }
+    }
+
+    static class Return extends ExprStmtNode {
+        Return(ExprNode value) {
+            super(value);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            throw new main.jlox.Return(expression.execute(frame));
+        }
+    }
+
+    /**
+     * Returns the result of a call, handing a call to a Lox function back to
+     * the trampoline in {@link LoxFunction} instead of making it here.
+     */
+    static class TailReturn extends ExprStmtNode {
+        private final Interpreter interpreter;
+        private final Token paren;
+        private final ExprNode[] arguments;
+
+        TailReturn(Interpreter interpreter, ExprNode callee, Token paren, ExprNode[] arguments) {
+            super(callee);
+            this.interpreter = interpreter;
+            this.paren = paren;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        void execute(Environment frame) {
+            Object function = expression.execute(frame);
+            Object[] values = ExprNode.executeArguments(arguments, frame);
+
+            if (function instanceof LoxFunction) {
+                ExprNode.checkArity(paren, (LoxFunction) function, values.length);
+                throw new main.jlox.Return(new TailCall((LoxFunction) function, values));
+            }
+
+            throw new main.jlox.Return(ExprNode.call(interpreter, paren, function, values));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            super.replaceChild(oldChild, newChild);
+            for (int i = 0; i < arguments.length; ++i) {
+                if (arguments[i] == oldChild)
+                    arguments[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class LocalVar extends ExprStmtNode {
+        private final int slot;
+
+        LocalVar(int slot, ExprNode initializer) {
+            super(initializer);
+            this.slot = slot;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            frame.values[slot] = expression.execute(frame);
+        }
+    }
+
+    static class CellVar extends ExprStmtNode {
+        private final int slot;
+
+        CellVar(int slot, ExprNode initializer) {
+            super(initializer);
+            this.slot = slot;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            frame.values[slot] = new Cell(expression.execute(frame));
+        }
+    }
+
+    static class GlobalVar extends ExprStmtNode {
+        private final GlobalEnvironment.Global global;
+
+        GlobalVar(GlobalEnvironment.Global global, ExprNode initializer) {
+            super(initializer);
+            this.global = global;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            global.define(expression.execute(frame));
+        }
+    }
+
+    static class If extends ExprStmtNode {
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            super(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            if (expression.executeBoolean(frame)) {
+                thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                elseBranch.execute(frame);
+            }
+        }
+    }
+
+    static class While extends ExprStmtNode {
+        private final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            super(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            while (expression.executeBoolean(frame)) {
+                body.execute(frame);
+            }
+        }
+    }
+
+    /**
+     * The loop of a for statement. The environment holding the initializer's
+     * variable, if any, is set up by an enclosing block node.
+     */
+    static class For extends ExprStmtNode {
+        private final StmtNode initializer;
+        private ExprNode increment;
+        private final StmtNode body;
+
+        For(StmtNode initializer, ExprNode condition, ExprNode increment, StmtNode body) {
+            super(condition);
+            this.initializer = adopt(initializer);
+            this.increment = adopt(increment);
+            this.body = adopt(body);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            if (initializer != null)
+                initializer.execute(frame);
+
+            while (expression.executeBoolean(frame)) {
+                body.execute(frame);
+                if (increment != null)
+                    increment.execute(frame);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (increment == oldChild) {
+                increment = (ExprNode) newChild;
+            } else {
+                super.replaceChild(oldChild, newChild);
+            }
+        }
+    }
+
+    static class Function extends StmtNode {
+        private final Interpreter interpreter;
+        private final FunctionRoot root;
+
+        Function(Interpreter interpreter, FunctionRoot root) {
+            this.interpreter = interpreter;
+            this.root = root;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            Stmt.Function declaration = root.declaration;
+
+            // a function that refers to itself captures its cell before it is filled
+            Cell cell = null;
+            if (declaration.cell) {
+                cell = new Cell(null);
+                frame.define(declaration.slot, cell);
+            }
+
+            LoxFunction function = new LoxFunction(declaration, Environment.closure(frame, declaration), false, root);
+            if (cell != null) {
+                cell.value = function;
+            } else {
+                define(interpreter, frame, declaration.slot, declaration.name, function);
+            }
+        }
+    }
+
+    static class Class extends StmtNode {
+        private final Interpreter interpreter;
+        private final Stmt.Class declaration;
+        private ExprNode superclass;
+        private final FunctionRoot[] methods;
+
+        Class(Interpreter interpreter, Stmt.Class declaration, ExprNode superclass, FunctionRoot[] methods) {
+            this.interpreter = interpreter;
+            this.declaration = declaration;
+            this.superclass = adopt(superclass);
+            this.methods = methods;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            Object parent = null;
+            if (superclass != null) {
+                parent = superclass.execute(frame);
+                if (!(parent instanceof LoxClass)) {
+                    throw new RuntimeError(declaration.superclass.name, "Superclass must be a class");
+                }
+            }
+
+            // methods that refer to the class capture its cell before it is filled
+            Cell cell = declaration.cell ? new Cell(null) : null;
+            define(interpreter, frame, declaration.slot, declaration.name, cell);
+
+            Environment closure = frame;
+            if (superclass != null) {
+                closure = new Environment(frame, 1);
+                closure.define(0, ((LoxClass) parent).superMethods(declaration.superMethods));
+            }
+
+            Map<Symbol, LoxFunction> functions = new HashMap<>();
+            for (FunctionRoot method : methods) {
+                Symbol name = method.declaration.name.symbol;
+                functions.put(name, new LoxFunction(method.declaration,
+                        Environment.closure(closure, method.declaration), name == Symbol.INIT, method));
+            }
+
+            LoxClass klass = new LoxClass(declaration.name.lexeme, (LoxClass) parent, functions);
+            if (cell != null) {
+                cell.value = klass;
+            } else {
+                define(interpreter, frame, declaration.slot, declaration.name, klass);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (superclass == oldChild)
+                superclass = (ExprNode) newChild;
+        }
+    }
+
+    private static void define(Interpreter interpreter, Environment frame, int slot, Token name, Object value) {
+        if (slot != -1) {
+            frame.define(slot, value);
+        } else {
+            interpreter.globals.define(name.symbol, value);
+        }
+    }
+}
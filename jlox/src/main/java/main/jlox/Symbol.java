@@ -0,0 +1,139 @@
+package main.jlox;
+
+import java.util.Arrays;
+
+/**
+ * An identifier, interned once by the {@link Scanner}. Every occurrence of a
+ * name refers to the same symbol, so the resolver and the runtime compare
+ * names by identity and key their tables on {@link #id}, a small dense
+ * integer, instead of hashing and comparing strings on every access.
+ */
+final class Symbol {
+    // written under the class lock; symbols never move within one table, so
+    // lookups that find what they want need no lock
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static volatile Symbol[] byId = new Symbol[512];
+    private static int count = 0;
+
+    static final Symbol THIS = intern("this");
+    static final Symbol SUPER = intern("super");
+    static final Symbol INIT = intern("init");
+
+    final String name;
+    final int id;
+    private final int hash;
+
+    private Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    static Symbol intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the symbol for {@code source[start, end)}, only copying the
+     * characters out the first time the name is seen. Scanners on several
+     * threads only contend when they meet a new name.
+     */
+    static Symbol intern(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        Symbol[] table = Symbol.table;
+        Symbol symbol = table[probe(table, source, start, end, hash)];
+        if (symbol != null)
+            return symbol;
+
+        return add(source, start, end, hash);
+    }
+
+    private static synchronized Symbol add(CharSequence source, int start, int end, int hash) {
+        int index = probe(table, source, start, end, hash);
+        if (table[index] != null)
+            return table[index];
+
+        Symbol symbol = new Symbol(source.subSequence(start, end).toString(), count, hash);
+        if (count == byId.length)
+            byId = Arrays.copyOf(byId, count * 2);
+        byId[count++] = symbol;
+
+        table[index] = symbol;
+        if (count * 2 > table.length)
+            rehash();
+
+        return symbol;
+    }
+
+    /**
+     * Returns the index of the name in {@code table}, or of the empty entry
+     * where it belongs.
+     */
+    private static int probe(Symbol[] table, CharSequence source, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int index = mix(hash) & mask;
+        for (Symbol symbol = table[index]; symbol != null; symbol = table[index]) {
+            if (symbol.hash == hash && symbol.matches(source, start, end))
+                return index;
+
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    /**
+     * The number of symbols interned so far; every id is below it.
+     */
+    static synchronized int count() {
+        return count;
+    }
+
+    static Symbol byId(int id) {
+        return byId[id];
+    }
+
+    private boolean matches(CharSequence source, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+
+        for (int i = 0; i < name.length(); ++i) {
+            if (name.charAt(i) != source.charAt(start + i))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void rehash() {
+        Symbol[] grown = new Symbol[table.length * 2];
+        int mask = grown.length - 1;
+        for (int i = 0; i < count; ++i) {
+            int index = mix(byId[i].hash) & mask;
+            while (grown[index] != null) {
+                index = (index + 1) & mask;
+            }
+            grown[index] = byId[i];
+        }
+
+        table = grown;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
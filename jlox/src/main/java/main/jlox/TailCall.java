@@ -0,0 +1,16 @@
+package main.jlox;
+
+/**
+ * A call in tail position, handed back to the caller's trampoline in
+ * {@link LoxFunction} instead of being made while the returning activation
+ * is still on the Java stack.
+ */
+final class TailCall {
+    final LoxFunction function;
+    final Object[] arguments;
+
+    TailCall(LoxFunction function, Object[] arguments) {
+        this.function = function;
+        this.arguments = arguments;
+    }
+}
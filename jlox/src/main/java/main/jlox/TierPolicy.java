@@ -0,0 +1,108 @@
+package main.jlox;
+
+/**
+ * Decides when code leaves the tree-walking {@link Interpreter}. Everything
+ * starts there, so short scripts pay no compilation. A function called
+ * {@code callThreshold} times is compiled by the {@link ClosureCompiler} and
+ * runs as closures from its next call on; a loop that takes
+ * {@code loopThreshold} back edges is compiled the same way and continues
+ * as closures from the iteration it reached, since both tiers share the
+ * resolver's frame layout. With the JIT enabled, functions that tiered up
+ * are its candidates in turn.
+ *
+ * A compiled function assumes the global functions it calls keep their
+ * current values and calls them without checks. When one of those guards
+ * fails the call still completes correctly, but the compiled body is
+ * dropped: the declaration returns to the tree walker and profiles again.
+ * A declaration invalidated too often is recompiled without speculating.
+ */
+final class TierPolicy {
+    private static final int MAX_DEOPTIMIZATIONS = 3;
+
+    private static boolean statistics = false;
+    private static long functions = 0;
+    private static long loops = 0;
+    private static long deoptimizations = 0;
+
+    private final ClosureCompiler compiler;
+    private final int callThreshold;
+    private final int loopThreshold;
+
+    TierPolicy(Interpreter interpreter, int callThreshold, int loopThreshold) {
+        this.compiler = new ClosureCompiler(interpreter);
+        this.callThreshold = callThreshold;
+        this.loopThreshold = loopThreshold;
+    }
+
+    /**
+     * Counts a call to {@code declaration} while it is still interpreted and
+     * returns its compiled body once it is hot, or null.
+     */
+    FunctionBody onCall(Stmt.Function declaration) {
+        if (declaration.tiered == null && ++declaration.calls >= callThreshold) {
+            boolean speculate = declaration.deoptimizations < MAX_DEOPTIMIZATIONS;
+            declaration.tiered = compiler.compileTier(declaration, speculate);
+            if (statistics)
+                ++functions;
+        }
+
+        return declaration.tiered;
+    }
+
+    /**
+     * Counts a back edge of an interpreted loop and returns the compiled loop,
+     * without its condition having been tested yet, once it is hot, or null.
+     */
+    ClosureCompiler.Action onBackEdge(Stmt.While loop) {
+        if (loop.tiered == null && ++loop.backEdges >= loopThreshold) {
+            loop.tiered = compiler.compileLoop(loop);
+            if (statistics)
+                ++loops;
+        }
+
+        return loop.tiered;
+    }
+
+    /**
+     * Like {@link #onBackEdge(Stmt.While)}; the compiled loop leaves out the
+     * initializer and the loop's scope, which are already set up.
+     */
+    ClosureCompiler.Action onBackEdge(Stmt.For loop) {
+        if (loop.tiered == null && ++loop.backEdges >= loopThreshold) {
+            loop.tiered = compiler.compileLoop(loop);
+            if (statistics)
+                ++loops;
+        }
+
+        return loop.tiered;
+    }
+
+    /**
+     * Drops the compiled body of {@code declaration} after one of its guards
+     * failed. {@code version} is the number of earlier deoptimizations the
+     * body was compiled after, so activations of an already dropped body
+     * cannot invalidate its replacement.
+     */
+    void deoptimize(Stmt.Function declaration, int version) {
+        if (declaration.tiered == null || declaration.deoptimizations != version)
+            return;
+
+        declaration.tiered = null;
+        declaration.calls = 0;
+        ++declaration.deoptimizations;
+        if (statistics)
+            ++deoptimizations;
+    }
+
+    static void enableStatistics() {
+        statistics = true;
+    }
+
+    static String statistics() {
+        if (!statistics)
+            return "";
+
+        return String.format("tiers: %d functions and %d loops tiered up, %d deoptimizations",
+                functions, loops, deoptimizations);
+    }
+}
@@ -0,0 +1,213 @@
+package main.jlox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens of a source, packed into parallel primitive arrays: type, start
+ * offset, length and line. A {@link Token} with its lexeme and literal is cut
+ * from the source only when the parser asks for one, which it does for the
+ * tokens that end up in the syntax tree. Identifiers are interned as they are
+ * scanned and keep their {@link Symbol}'s id in place of the length.
+ */
+final class TokenBuffer implements TokenSink {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // lexemes fixed by their type, so punctuation and keywords share one string
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        String[] punctuation = { "(", ")", "{", "}", ",", ".", "-", "+", ";", "/", "*", "!", "!=", "=", "==", ">",
+                ">=", "<", "<=" };
+        for (int i = 0; i < punctuation.length; ++i) {
+            FIXED_LEXEMES[TokenType.LEFT_PAREN.ordinal() + i] = punctuation[i];
+        }
+
+        for (int i = TokenType.AND.ordinal(); i <= TokenType.WHILE.ordinal(); ++i) {
+            FIXED_LEXEMES[i] = TYPES[i].name().toLowerCase();
+        }
+
+        FIXED_LEXEMES[TokenType.EOF.ordinal()] = "";
+    }
+
+    private final String source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int size = 0;
+
+    TokenBuffer(String source) {
+        this(source, source.length());
+    }
+
+    /**
+     * A buffer for tokens scanned from {@code length} characters of
+     * {@code source}.
+     */
+    TokenBuffer(String source, int length) {
+        this.source = source;
+
+        // about one token for every five characters of typical code
+        int capacity = Math.max(16, length / 5);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    @Override
+    public void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        ++size;
+    }
+
+    @Override
+    public void addIdentifier(Symbol symbol, int start, int line) {
+        add(TokenType.IDENTIFIER, start, symbol.id, line);
+    }
+
+    /**
+     * Joins the buffers of consecutive chunks of {@code source}, as scanned by
+     * {@link Scanner#scanChunk}, and ends them with EOF on {@code line}.
+     */
+    static TokenBuffer join(String source, List<TokenBuffer> chunks, int line) {
+        int total = 1;
+        for (TokenBuffer chunk : chunks) {
+            total += chunk.size;
+        }
+
+        TokenBuffer joined = new TokenBuffer(source, 0);
+        joined.types = new byte[total];
+        joined.starts = new int[total];
+        joined.lengths = new int[total];
+        joined.lines = new int[total];
+        for (TokenBuffer chunk : chunks) {
+            System.arraycopy(chunk.types, 0, joined.types, joined.size, chunk.size);
+            System.arraycopy(chunk.starts, 0, joined.starts, joined.size, chunk.size);
+            System.arraycopy(chunk.lengths, 0, joined.lengths, joined.size, chunk.size);
+            System.arraycopy(chunk.lines, 0, joined.lines, joined.size, chunk.size);
+            joined.size += chunk.size;
+        }
+
+        joined.add(TokenType.EOF, source.length(), 0, line);
+        return joined;
+    }
+
+    /**
+     * Whether {@code other} holds exactly the same tokens.
+     */
+    boolean sameTokens(TokenBuffer other) {
+        return size == other.size
+                && Arrays.equals(types, 0, size, other.types, 0, size)
+                && Arrays.equals(starts, 0, size, other.starts, 0, size)
+                && Arrays.equals(lengths, 0, size, other.lengths, 0, size)
+                && Arrays.equals(lines, 0, size, other.lines, 0, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    String lexeme(int index) {
+        return lexeme(source, types[index], starts[index], lengths[index]);
+    }
+
+    Token token(int index) {
+        return token(source, types[index], starts[index], lengths[index], lines[index]);
+    }
+
+    /**
+     * The lexeme of a packed token, where {@code length} is the symbol id for
+     * an identifier.
+     */
+    static String lexeme(String source, byte type, int start, int length) {
+        String fixed = FIXED_LEXEMES[type];
+        if (fixed != null)
+            return fixed;
+        if (type == TokenType.IDENTIFIER.ordinal())
+            return Symbol.byId(length).name;
+
+        return source.substring(start, start + length);
+    }
+
+    /**
+     * Builds the {@link Token} for a packed token.
+     */
+    static Token token(String source, byte type, int start, int length, int line) {
+        if (type == TokenType.IDENTIFIER.ordinal()) {
+            Symbol symbol = Symbol.byId(length);
+            return new Token(TokenType.IDENTIFIER, symbol.name, null, line, symbol);
+        }
+
+        TokenType tokenType = TYPES[type];
+        return new Token(tokenType, lexeme(source, type, start, length),
+                Scanner.literal(source, tokenType, start, start + length), line);
+    }
+
+    TokenCursor cursor() {
+        return new Cursor();
+    }
+
+    private final class Cursor implements TokenCursor {
+        private int current = 0;
+
+        // the parser usually asks for the token it just consumed more than once
+        private int cachedIndex = -1;
+        private Token cached = null;
+
+        @Override
+        public TokenType peekType() {
+            return type(current);
+        }
+
+        @Override
+        public Token peek() {
+            return tokenAt(current);
+        }
+
+        @Override
+        public TokenType previousType() {
+            return type(current - 1);
+        }
+
+        @Override
+        public Token previous() {
+            return tokenAt(current - 1);
+        }
+
+        @Override
+        public void advance() {
+            if (types[current] != TokenType.EOF.ordinal())
+                ++current;
+        }
+
+        private Token tokenAt(int index) {
+            if (index != cachedIndex) {
+                cached = token(index);
+                cachedIndex = index;
+            }
+
+            return cached;
+        }
+    }
+}
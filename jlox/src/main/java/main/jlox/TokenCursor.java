@@ -0,0 +1,22 @@
+package main.jlox;
+
+/**
+ * How the {@link Parser} reads tokens: the one it is looking at and the one
+ * it consumed last. Types can be checked without the token existing as an
+ * object, so sources that store tokens compactly only build a {@link Token}
+ * for the ones the parser keeps.
+ */
+interface TokenCursor {
+    TokenType peekType();
+
+    Token peek();
+
+    TokenType previousType();
+
+    Token previous();
+
+    /**
+     * Moves to the next token, staying on EOF once there.
+     */
+    void advance();
+}
@@ -0,0 +1,12 @@
+package main.jlox;
+
+/**
+ * Where the {@link Scanner} puts tokens it keeps packed: as offsets into the
+ * source rather than as {@link Token} objects. Identifiers come with their
+ * interned {@link Symbol} instead of a length.
+ */
+interface TokenSink {
+    void add(TokenType type, int start, int length, int line);
+
+    void addIdentifier(Symbol symbol, int start, int line);
+}
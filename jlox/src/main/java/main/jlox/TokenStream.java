@@ -0,0 +1,110 @@
+package main.jlox;
+
+/**
+ * Tokens pulled from the {@link Scanner} as the parser advances. The parser
+ * never looks further back than the token it consumed last, so the stream
+ * keeps tokens in a fixed ring and scanning and parsing run as one pass: what
+ * stays reachable is the source and the syntax tree, not a token per lexeme.
+ * The scanner runs ahead to fill the ring, rather than for one token at a
+ * time, so it stays in its own tight loop.
+ */
+final class TokenStream implements TokenSink, TokenCursor {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // a power of two; the previous token's slot is never overwritten
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Scanner scanner;
+    private final String source;
+    private final byte[] types = new byte[CAPACITY];
+    private final int[] starts = new int[CAPACITY];
+    private final int[] lengths = new int[CAPACITY];
+    private final int[] lines = new int[CAPACITY];
+
+    // tokens scanned so far, and the index of the one the parser is looking at
+    private int count = 0;
+    private int current = 0;
+    private boolean ended = false;
+
+    private int cachedIndex = -1;
+    private Token cached = null;
+
+    TokenStream(Scanner scanner, String source) {
+        this.scanner = scanner;
+        this.source = source;
+    }
+
+    @Override
+    public void add(TokenType type, int start, int length, int line) {
+        int slot = count++ & MASK;
+        types[slot] = (byte) type.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        if (type == TokenType.EOF)
+            ended = true;
+    }
+
+    @Override
+    public void addIdentifier(Symbol symbol, int start, int line) {
+        add(TokenType.IDENTIFIER, start, symbol.id, line);
+    }
+
+    @Override
+    public TokenType peekType() {
+        return TYPES[types[fill(current)]];
+    }
+
+    @Override
+    public Token peek() {
+        return tokenAt(current);
+    }
+
+    @Override
+    public TokenType previousType() {
+        return TYPES[types[(current - 1) & MASK]];
+    }
+
+    @Override
+    public Token previous() {
+        return tokenAt(current - 1);
+    }
+
+    @Override
+    public void advance() {
+        if (types[fill(current)] != TokenType.EOF.ordinal())
+            ++current;
+    }
+
+    /**
+     * Returns the slot of the token at {@code index}, scanning ahead if it
+     * does not exist yet.
+     */
+    private int fill(int index) {
+        if (index >= count)
+            refill();
+
+        return index & MASK;
+    }
+
+    /**
+     * Scans as many tokens as fit behind the previous one, or up to EOF.
+     */
+    private void refill() {
+        int limit = current - 1 + CAPACITY;
+        while (count < limit && !ended) {
+            scanner.scanNext();
+        }
+    }
+
+    private Token tokenAt(int index) {
+        if (index != cachedIndex) {
+            int slot = fill(index);
+            cached = TokenBuffer.token(source, types[slot], starts[slot], lengths[slot], lines[slot]);
+            cachedIndex = index;
+        }
+
+        return cached;
+    }
+}
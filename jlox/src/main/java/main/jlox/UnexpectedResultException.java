@@ -0,0 +1,21 @@
+package main.jlox;
+
+import java.io.Serial;
+
+/**
+ * Thrown by the primitive evaluation paths when a value is not of the type the
+ * caller asked for. Carries the value so the caller can finish the operation
+ * on the generic path without evaluating anything twice.
+ */
+public class UnexpectedResultException extends Exception {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    final Object value;
+
+    UnexpectedResultException(Object value) {
+        super(null, null, false, false);
+
+        this.value = value;
+    }
+}
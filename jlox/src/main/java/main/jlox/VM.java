@@ -0,0 +1,534 @@
+package main.jlox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stack-based bytecode interpreter for chunks produced by
+ * {@link BytecodeCompiler}, modelled on clox's vm.c.
+ */
+public class VM {
+    private static final int FRAMES_MAX = 1 << 16;
+
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private final Map<String, Object> globals = new HashMap<>();
+    private ObjUpvalue openUpvalues = null;
+
+    VM() {
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = new CallFrame();
+        }
+
+        globals.put("clock", new ObjNative(0,
+                (stack, firstArg) -> (double) System.currentTimeMillis() / 1000.0));
+    }
+
+    public void interpret(ObjFunction function) {
+        try {
+            ObjClosure closure = new ObjClosure(function);
+            ensureStack(function.maxStack);
+            stack[stackTop++] = closure;
+            call(closure, 0);
+
+            run();
+        } catch (RuntimeError error) {
+            resetStack();
+            Lox.runtimeError(error);
+        }
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, null);
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private RuntimeError error(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        int line = frame.closure.function.chunk.lines[frame.ip - 1];
+        return new RuntimeError(line, message);
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        ObjClosure closure = frame.closure;
+        byte[] code = closure.function.chunk.code;
+        Object[] constants = closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.slots;
+        Object[] stack = this.stack;
+        int sp = stackTop;
+
+        for (;;) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.OP_CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = constants[index];
+                    break;
+                }
+                case OpCode.OP_NIL:
+                    stack[sp++] = null;
+                    break;
+                case OpCode.OP_TRUE:
+                    stack[sp++] = true;
+                    break;
+                case OpCode.OP_FALSE:
+                    stack[sp++] = false;
+                    break;
+                case OpCode.OP_POP:
+                    stack[--sp] = null;
+                    break;
+                case OpCode.OP_GET_LOCAL:
+                    stack[sp++] = stack[base + (code[ip++] & 0xff)];
+                    break;
+                case OpCode.OP_SET_LOCAL:
+                    stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                    break;
+                case OpCode.OP_GET_GLOBAL: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    Object value = globals.get(name);
+                    if (value == null && !globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw error("Undefined variable '" + name + "'.");
+                    }
+                    stack[sp++] = value;
+                    break;
+                }
+                case OpCode.OP_DEFINE_GLOBAL: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    globals.put(name, stack[--sp]);
+                    stack[sp] = null;
+                    break;
+                }
+                case OpCode.OP_SET_GLOBAL: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    if (!globals.containsKey(name)) {
+                        frame.ip = ip;
+                        throw error("Undefined variable '" + name + "'.");
+                    }
+                    // no pop here because assignment is an expression
+                    globals.put(name, stack[sp - 1]);
+                    break;
+                }
+                case OpCode.OP_GET_UPVALUE: {
+                    ObjUpvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    stack[sp++] = upvalue.location >= 0 ? stack[upvalue.location] : upvalue.closed;
+                    break;
+                }
+                case OpCode.OP_SET_UPVALUE: {
+                    ObjUpvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.location >= 0) {
+                        stack[upvalue.location] = stack[sp - 1];
+                    } else {
+                        upvalue.closed = stack[sp - 1];
+                    }
+                    break;
+                }
+                case OpCode.OP_GET_PROPERTY: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    if (!(stack[sp - 1] instanceof ObjInstance)) {
+                        frame.ip = ip;
+                        throw error("Only instances have properties.");
+                    }
+
+                    ObjInstance instance = (ObjInstance) stack[sp - 1];
+                    Object value = instance.fields.get(name);
+                    if (value != null || instance.fields.containsKey(name)) {
+                        stack[sp - 1] = value;
+                        break;
+                    }
+
+                    ObjClosure method = instance.klass.methods.get(name);
+                    if (method == null) {
+                        frame.ip = ip;
+                        throw error("Undefined property " + name + ".");
+                    }
+                    stack[sp - 1] = new ObjBoundMethod(instance, method);
+                    break;
+                }
+                case OpCode.OP_SET_PROPERTY: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    if (!(stack[sp - 2] instanceof ObjInstance)) {
+                        frame.ip = ip;
+                        throw error("Only instance have fields.");
+                    }
+
+                    ObjInstance instance = (ObjInstance) stack[sp - 2];
+                    Object value = stack[--sp];
+                    instance.fields.put(name, value);
+                    stack[sp] = null;
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case OpCode.OP_GET_SUPER: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    ObjClass superclass = (ObjClass) stack[--sp];
+                    stack[sp] = null;
+
+                    ObjClosure method = superclass.methods.get(name);
+                    if (method == null) {
+                        frame.ip = ip;
+                        throw error("Undefined property '" + name + "'.");
+                    }
+                    stack[sp - 1] = new ObjBoundMethod(stack[sp - 1], method);
+                    break;
+                }
+                case OpCode.OP_EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp] = null;
+                    stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case OpCode.OP_GREATER:
+                case OpCode.OP_GREATER_EQUAL:
+                case OpCode.OP_LESS:
+                case OpCode.OP_LESS_EQUAL:
+                case OpCode.OP_SUBTRACT:
+                case OpCode.OP_MULTIPLY:
+                case OpCode.OP_DIVIDE: {
+                    Object b = stack[sp - 1];
+                    Object a = stack[sp - 2];
+                    if (!(a instanceof Double) || !(b instanceof Double)) {
+                        frame.ip = ip;
+                        throw error("Operands must be bumbers.");
+                    }
+
+                    stack[--sp] = null;
+                    stack[sp - 1] = arithmetic(instruction, (double) a, (double) b);
+                    break;
+                }
+                case OpCode.OP_ADD: {
+                    Object b = stack[sp - 1];
+                    Object a = stack[sp - 2];
+                    if (a instanceof Double && b instanceof Double) {
+                        stack[sp - 2] = (double) a + (double) b;
+                    } else if (a instanceof String && b instanceof String) {
+                        stack[sp - 2] = (String) a + (String) b;
+                    } else {
+                        frame.ip = ip;
+                        throw error("Operands must be two numbers or two strings.");
+                    }
+                    stack[--sp] = null;
+                    break;
+                }
+                case OpCode.OP_NOT:
+                    stack[sp - 1] = Interpreter.isFalsey(stack[sp - 1]);
+                    break;
+                case OpCode.OP_NEGATE:
+                    if (!(stack[sp - 1] instanceof Double)) {
+                        frame.ip = ip;
+                        throw error("Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double) stack[sp - 1];
+                    break;
+                case OpCode.OP_PRINT:
+                    System.out.println(Interpreter.stringify(stack[--sp]));
+                    stack[sp] = null;
+                    break;
+                case OpCode.OP_JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.OP_JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (Interpreter.isFalsey(stack[sp - 1]))
+                        ip += offset;
+                    break;
+                }
+                case OpCode.OP_LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+                case OpCode.OP_CALL:
+                case OpCode.OP_INVOKE:
+                case OpCode.OP_SUPER_INVOKE: {
+                    String name = null;
+                    if (instruction != OpCode.OP_CALL) {
+                        name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                    }
+                    int argCount = code[ip++] & 0xff;
+
+                    frame.ip = ip;
+                    stackTop = sp;
+                    if (instruction == OpCode.OP_CALL) {
+                        callValue(stack[sp - argCount - 1], argCount);
+                    } else if (instruction == OpCode.OP_INVOKE) {
+                        invoke(name, argCount);
+                    } else {
+                        ObjClass superclass = (ObjClass) stack[--stackTop];
+                        stack[stackTop] = null;
+                        invokeFromClass(superclass, name, argCount, true);
+                    }
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    stack = this.stack;
+                    sp = stackTop;
+                    break;
+                }
+                case OpCode.OP_CLOSURE: {
+                    ObjFunction function = (ObjFunction) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    ObjClosure created = new ObjClosure(function);
+                    stack[sp++] = created;
+                    for (int i = 0; i < created.upvalues.length; ++i) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        if (isLocal) {
+                            created.upvalues[i] = captureUpvalue(base + index);
+                        } else {
+                            created.upvalues[i] = closure.upvalues[index];
+                        }
+                    }
+                    break;
+                }
+                case OpCode.OP_CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    stack[--sp] = null;
+                    break;
+                case OpCode.OP_RETURN: {
+                    Object result = stack[--sp];
+                    closeUpvalues(base);
+                    frameCount--;
+
+                    // drop the callee's slots so they don't keep garbage alive
+                    Arrays.fill(stack, base, sp + 1, null);
+                    if (frameCount == 0) {
+                        stackTop = 0;
+                        return;
+                    }
+
+                    sp = base;
+                    stack[sp++] = result;
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                case OpCode.OP_CLASS: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    stack[sp++] = new ObjClass(name);
+                    break;
+                }
+                case OpCode.OP_INHERIT: {
+                    Object superclass = stack[sp - 2];
+                    if (!(superclass instanceof ObjClass)) {
+                        frame.ip = ip;
+                        throw error("Superclass must be a class");
+                    }
+
+                    // closed inheritance lets us copy the methods down once
+                    ObjClass subclass = (ObjClass) stack[sp - 1];
+                    subclass.methods.putAll(((ObjClass) superclass).methods);
+                    stack[--sp] = null;
+                    break;
+                }
+                case OpCode.OP_METHOD: {
+                    String name = (String) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+
+                    ObjClass klass = (ObjClass) stack[sp - 2];
+                    klass.methods.put(name, (ObjClosure) stack[--sp]);
+                    stack[sp] = null;
+                    break;
+                }
+
+                default:
+                    frame.ip = ip;
+                    throw error("Unknown opcode " + instruction + ".");
+            }
+        }
+    }
+
+    private static Object arithmetic(byte instruction, double a, double b) {
+        switch (instruction) {
+            case OpCode.OP_GREATER:
+                return a > b;
+            case OpCode.OP_GREATER_EQUAL:
+                return a >= b;
+            case OpCode.OP_LESS:
+                return a < b;
+            case OpCode.OP_LESS_EQUAL:
+                return a <= b;
+            case OpCode.OP_SUBTRACT:
+                return a - b;
+            case OpCode.OP_MULTIPLY:
+                return a * b;
+            case OpCode.OP_DIVIDE:
+                return a / b;
+
+            default:
+                // unreachable code
+                return null;
+        }
+    }
+
+    private void call(ObjClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw error("Expected " + closure.function.arity + " arguments but got " + argCount + ".");
+        }
+
+        if (frameCount == FRAMES_MAX) {
+            throw error("Stack overflow.");
+        }
+
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+            for (int i = frameCount; i < frames.length; ++i) {
+                frames[i] = new CallFrame();
+            }
+        }
+
+        int slots = stackTop - argCount - 1;
+        ensureStack(slots + closure.function.maxStack);
+
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.slots = slots;
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof ObjClosure) {
+            call((ObjClosure) callee, argCount);
+            return;
+        }
+
+        if (callee instanceof ObjBoundMethod) {
+            ObjBoundMethod bound = (ObjBoundMethod) callee;
+            stack[stackTop - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+
+        if (callee instanceof ObjClass) {
+            ObjClass klass = (ObjClass) callee;
+            ObjClosure initializer = klass.methods.get("init");
+            if (initializer == null && argCount != 0) {
+                throw error("Expected 0 arguments but got " + argCount + ".");
+            }
+
+            stack[stackTop - argCount - 1] = new ObjInstance(klass);
+            if (initializer != null) {
+                call(initializer, argCount);
+            }
+            return;
+        }
+
+        if (callee instanceof ObjNative) {
+            ObjNative function = (ObjNative) callee;
+            if (argCount != function.arity) {
+                throw error("Expected " + function.arity + " arguments but got " + argCount + ".");
+            }
+
+            Object result = function.function.call(stack, stackTop - argCount);
+            Arrays.fill(stack, stackTop - argCount, stackTop, null);
+            stackTop -= argCount + 1;
+            stack[stackTop++] = result;
+            return;
+        }
+
+        throw error("Can only call functions and classes.");
+    }
+
+    private void invoke(String name, int argCount) {
+        Object receiver = stack[stackTop - argCount - 1];
+        if (!(receiver instanceof ObjInstance)) {
+            throw error("Only instances have properties.");
+        }
+
+        ObjInstance instance = (ObjInstance) receiver;
+        Object value = instance.fields.get(name);
+        if (value != null || instance.fields.containsKey(name)) {
+            stack[stackTop - argCount - 1] = value;
+            callValue(value, argCount);
+            return;
+        }
+
+        invokeFromClass(instance.klass, name, argCount, false);
+    }
+
+    private void invokeFromClass(ObjClass klass, String name, int argCount, boolean isSuper) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw error(isSuper
+                    ? "Undefined property '" + name + "'."
+                    : "Undefined property " + name + ".");
+        }
+
+        call(method, argCount);
+    }
+
+    private ObjUpvalue captureUpvalue(int local) {
+        ObjUpvalue prevUpvalue = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.location > local) {
+            prevUpvalue = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        if (upvalue != null && upvalue.location == local) {
+            return upvalue;
+        }
+
+        ObjUpvalue createdUpvalue = new ObjUpvalue(local);
+        createdUpvalue.next = upvalue;
+
+        if (prevUpvalue == null) {
+            openUpvalues = createdUpvalue;
+        } else {
+            prevUpvalue.next = createdUpvalue;
+        }
+
+        return createdUpvalue;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.location >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.location];
+            upvalue.location = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size >= stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + 1));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package main.jlox;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link CharSearch} over a copy of the source, a vector of characters at a
+ * time: each step compares the whole vector against the characters sought,
+ * then takes the first lane that failed or counts the lanes that matched.
+ * Finding a single character stays with {@link String#indexOf}, whose
+ * intrinsic beats locating the first matching lane. Only loaded when the
+ * {@code jdk.incubator.vector} module is.
+ */
+final class VectorCharSearch extends CharSearch {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // blanks checked one at a time before trying whole vectors
+    private static final int SCALAR_PREFIX = 8;
+
+    private final char[] chars;
+
+    VectorCharSearch(String source) {
+        super(source);
+        this.chars = source.toCharArray();
+    }
+
+    @Override
+    int skipBlanks(int from, int end) {
+        // most runs are a space or two between tokens, too short for a vector
+        int index = from;
+        int scalarEnd = Math.min(end, from + SCALAR_PREFIX);
+        while (index < scalarEnd && isBlank(chars[index])) {
+            ++index;
+        }
+        if (index < scalarEnd)
+            return index;
+
+        for (; index + LANES <= end; index += LANES) {
+            ShortVector vector = ShortVector.fromCharArray(SPECIES, chars, index);
+            int lane = vector.eq((short) ' ').or(vector.eq((short) '\t')).or(vector.eq((short) '\r')).not()
+                    .firstTrue();
+            if (lane < LANES)
+                return index + lane;
+        }
+
+        while (index < end && isBlank(chars[index])) {
+            ++index;
+        }
+
+        return index;
+    }
+
+    @Override
+    int count(char c, int from, int to) {
+        int count = 0;
+        int index = from;
+        for (; index + LANES <= to; index += LANES) {
+            count += ShortVector.fromCharArray(SPECIES, chars, index).eq((short) c).trueCount();
+        }
+
+        for (; index < to; ++index) {
+            if (chars[index] == c)
+                ++count;
+        }
+
+        return count;
+    }
+}
@@ -18,29 +18,42 @@ public class GenerateAst {
 
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
+                "Assign   : Token name, Expr value"
+                        + " | int depth = -1, int slot = -1, boolean cell = false, GlobalEnvironment.Global global = null",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
-                "Get      : Expr object, Token name",
+                "Call     : Expr callee, Token paren, List<Expr> arguments | LoxCallable checked = null",
+                "Get      : Expr object, Token name | InlineCache cache = new InlineCache()",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
-                "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "Set      : Expr object, Token name, Expr value | InlineCache cache = new InlineCache()",
+                "Super    : Token keyword, Token method"
+                        + " | int depth = -1, int slot = -1, int thisDepth = -1, int thisSlot = -1, int index = -1",
+                "This     : Token keyword | int depth = -1, int slot = -1",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"));
+                "Variable : Token name"
+                        + " | int depth = -1, int slot = -1, boolean cell = false, GlobalEnvironment.Global global = null"));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Block      : List<Stmt> statements | int size = 0, boolean escapes = true",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods"
+                        + " | int slot = -1, boolean cell = false, List<Symbol> superMethods = null",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "For        : Stmt initializer, Expr condition, Expr increment, Stmt body"
+                        + " | int size = 0, boolean escapes = true,"
+                        + " int backEdges = 0, ClosureCompiler.Action tiered = null",
+                "Function   : Token name, List<Token> params, List<Stmt> body"
+                        + " | int slot = -1, int frameSize = 0, boolean cell = false,"
+                        + " int[] captureDepths = null, int[] captureSlots = null, int[] cellParams = null,"
+                        + " boolean escapes = true,"
+                        + " int calls = 0, FunctionBody tiered = null, int deoptimizations = 0",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"));
+                "Return     : Token keyword, Expr value | boolean tail = false",
+                "Var        : Token name, Expr initializer"
+                        + " | int slot = -1, boolean cell = false, GlobalEnvironment.Global global = null",
+                "While      : Expr condition, Stmt body"
+                        + " | int backEdges = 0, ClosureCompiler.Action tiered = null"));
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types)
@@ -61,8 +74,10 @@ public class GenerateAst {
             writer.println();
 
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fieldLists = type.split(":")[1].split("\\|");
+            String fields = fieldLists[0].trim();
+            String resolved = fieldLists.length > 1 ? fieldLists[1].trim() : null;
+            defineType(writer, baseName, className, fields, resolved);
         }
 
         writer.println();
@@ -85,7 +100,8 @@ public class GenerateAst {
         writer.println(indent + "}");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+            String resolvedList) {
         writer.println(indent + "static class " + className + " extends " + baseName + " {");
 
         // Constructor
@@ -114,6 +130,13 @@ public class GenerateAst {
             writer.println(indent + indent + "final " + field + ";");
         }
 
+        // Mutable fields filled in after parsing, e.g. "int slot = -1"
+        if (resolvedList != null) {
+            for (String field : resolvedList.split(", ")) {
+                writer.println(indent + indent + field + ";");
+            }
+        }
+
         writer.println(indent + "}");
     }
 }
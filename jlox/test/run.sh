@@ -0,0 +1,59 @@
+#!/bin/bash
+# Runs every script in this directory and compares its output, errors and
+# exit code with <script>.out, which records what the tree-walking
+# interpreter prints. Every engine has to match it.
+#
+# usage: test/run.sh [lox options...]
+#
+# With no options, runs the scripts once per engine: the tree-walker,
+# --nodes, --closures, --vm, --jit and --tiered, then --tiered --jit with
+# every threshold at 1, so each function and loop is compiled on first use.
+set -u
+
+here=$(cd "$(dirname "$0")" && pwd)
+root=$(dirname "$here")
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+
+# AstPrinter is an unfinished exercise and does not compile
+find "$root/src/main/java" -name '*.java' ! -name AstPrinter.java > "$classes/sources"
+javac -nowarn --add-modules jdk.incubator.vector -d "$classes" @"$classes/sources" 2>&1 \
+        | grep -v -e '^Note:' -e 'incubating' -e '^1 warning' \
+        && exit 1
+
+failed=0
+
+run() {
+    local java_options=$1
+    shift
+    echo "== ${*:-tree-walker} $java_options"
+    for script in "$here"/*.lx; do
+        local name
+        name=$(basename "$script" .lx)
+        local actual
+        actual=$(cd "$here" && java $java_options -Xss4m -cp "$classes" main.jlox.Lox "$@" "$name.lx" 2>&1; \
+                echo "exit=$?")
+        if [ "$actual" != "$(cat "$here/$name.out")" ]; then
+            echo "FAIL $name"
+            diff <(echo "$actual") "$here/$name.out" | head -20
+            failed=1
+        fi
+    done
+}
+
+if [ $# -gt 0 ]; then
+    run "" "$@"
+else
+    run ""
+    run "" --nodes
+    run "" --closures
+    run "" --vm
+    run "" --jit
+    run "" --tiered
+    run "-Djlox.tier.calls=1 -Djlox.tier.loops=1 -Djlox.jit.threshold=1" --tiered --jit
+fi
+
+if [ $failed = 0 ]; then
+    echo "all scripts passed"
+fi
+exit $failed